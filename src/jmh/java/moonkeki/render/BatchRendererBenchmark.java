@@ -0,0 +1,68 @@
+package moonkeki.render;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.awt.geom.AffineTransform;
+import java.util.concurrent.TimeUnit;
+
+//The quads are deferred and cleared, never flushed, so no OpenGL call is made
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class BatchRendererBenchmark {
+
+    private static final int QUADS = 1024;
+
+    private Texture texture;
+    private BatchRenderer batchRenderer;
+    private PixmapRenderer.DrawCommand drawCommand;
+
+    @Setup
+    public void setup(BenchmarkContext context) {
+        this.texture = new Texture(256, 256);
+        this.batchRenderer = BatchRenderer.builder()
+                                          .ofCapacity(BatchRendererBenchmark
+                                                      .QUADS)
+                                          .deferred()
+                                          .build();
+        this.drawCommand = PixmapRenderer.DrawCommand.instance()
+                .ofPixmap(this.texture.subRegion(0, 0, 32, 32))
+                .ofSize(32.0, 32.0)
+                .withTransform(AffineTransform.getRotateInstance(0.5));
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.batchRenderer.close();
+        this.texture.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BatchRendererBenchmark.QUADS)
+    public void queueDrawCommand() {
+        for (int i = 0; i < BatchRendererBenchmark.QUADS; ++i) {
+            this.batchRenderer.queue(this.drawCommand.atPosition(i, i));
+        }//end for
+        this.batchRenderer.clear();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BatchRendererBenchmark.QUADS)
+    public void queuePrimitive() {
+        final Pixmap PIXMAP = this.drawCommand.getPixmap();
+        for (int i = 0; i < BatchRendererBenchmark.QUADS; ++i) {
+            this.batchRenderer.queue(PIXMAP, i, i, 32.0, 32.0,
+                                     1.0, 0.0, 0.0, 1.0, 0.0, 0.0, 0);
+        }//end for
+        this.batchRenderer.clear();
+    }
+
+}
@@ -0,0 +1,53 @@
+package moonkeki.render;
+
+import org.lwjgl.glfw.GLFW;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.system.MemoryUtil;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * An OpenGL context of a hidden window, for the benchmarks to create their
+ * textures, renderers and shaders in their setup. The benchmarked methods
+ * themselves make no OpenGL call, so what they measure is the CPU path alone.
+ * Where GLFW supports it, its null platform is used, so that no display is
+ * needed.
+ */
+@State(Scope.Benchmark)
+public class BenchmarkContext {
+
+    private long windowId;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        if (GLFW.glfwPlatformSupported(GLFW.GLFW_PLATFORM_NULL)) {
+            GLFW.glfwInitHint(GLFW.GLFW_PLATFORM, GLFW.GLFW_PLATFORM_NULL);
+        }//end if
+
+        if (!GLFW.glfwInit()) {
+            throw new IllegalStateException("Can't initialize GLFW.");
+        }//end if
+
+        GLFW.glfwDefaultWindowHints();
+        GLFW.glfwWindowHint(GLFW.GLFW_VISIBLE, GLFW.GLFW_FALSE);
+        this.windowId = GLFW.glfwCreateWindow(64, 64, "Benchmark",
+                                              MemoryUtil.NULL, MemoryUtil.NULL);
+        if (MemoryUtil.NULL == this.windowId) {
+            throw new IllegalStateException("Can't create GLFW window.");
+        }//end if
+
+        GLFW.glfwMakeContextCurrent(this.windowId);
+        GL.createCapabilities();
+        RenderState.invalidate();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        GLFW.glfwDestroyWindow(this.windowId);
+        GLFW.glfwTerminate();
+    }
+
+}
@@ -0,0 +1,61 @@
+package moonkeki.render;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.awt.geom.AffineTransform;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class DrawCommandBenchmark {
+
+    private final AffineTransform TRANSFORM = AffineTransform
+            .getRotateInstance(0.5);
+    private final float[] QUAD = new float[DeferredQueue.FLOATS_PER_RECORD];
+    private Texture texture;
+    private BatchRenderer batchRenderer;
+    private PixmapRenderer.DrawCommand drawCommand;
+
+    @Setup
+    public void setup(BenchmarkContext context) {
+        this.texture = new Texture(256, 256);
+        this.batchRenderer = BatchRenderer.getDefault();
+        this.drawCommand = PixmapRenderer.DrawCommand.instance()
+                                                     .ofPixmap(this.texture)
+                                                     .ofSize(32.0, 32.0)
+                                                     .withTransform(
+                                                             this.TRANSFORM);
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.batchRenderer.close();
+        this.texture.close();
+    }
+
+    @Benchmark
+    public BatchRenderer.DrawCommand build() {
+        return this.batchRenderer.drawCommand()
+                                 .ofPixmap(this.texture)
+                                 .atPosition(10.0, 20.0)
+                                 .ofSize(32.0, 32.0)
+                                 .withTransform(this.TRANSFORM)
+                                 .onLayer(1);
+    }
+
+    //The vertex generation of a DrawCommand: its transform and corners
+    @Benchmark
+    public float[] toQuad() {
+        PixmapRenderer.toQuad(this.QUAD, 0, this.drawCommand);
+        return this.QUAD;
+    }
+
+}
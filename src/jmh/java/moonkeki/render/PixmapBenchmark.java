@@ -0,0 +1,47 @@
+package moonkeki.render;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class PixmapBenchmark {
+
+    private Texture texture;
+    private Pixmap region;
+
+    @Setup
+    public void setup(BenchmarkContext context) {
+        this.texture = new Texture(1024, 1024);
+        this.region = this.texture.subRegion(128, 128, 512, 512);
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.texture.close();
+    }
+
+    @Benchmark
+    public Pixmap subRegion() {
+        return this.region.subRegion(16, 16, 32, 32);
+    }
+
+    @Benchmark
+    public void texCoords(Blackhole blackhole) {
+        blackhole.consume(this.region.getMinU());
+        blackhole.consume(this.region.getMinV());
+        blackhole.consume(this.region.getMaxU());
+        blackhole.consume(this.region.getMaxV());
+    }
+
+}
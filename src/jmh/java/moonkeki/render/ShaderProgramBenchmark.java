@@ -0,0 +1,45 @@
+package moonkeki.render;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.awt.geom.AffineTransform;
+import java.util.concurrent.TimeUnit;
+
+//The uniforms are only staged, they are uploaded when the program is used
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class ShaderProgramBenchmark {
+
+    //Alternated, so the value always changes and is never skipped
+    private final AffineTransform[] TRANSFORMS = {
+            AffineTransform.getRotateInstance(0.5),
+            AffineTransform.getScaleInstance(2.0, 3.0)
+    };
+    private ShaderProgram shader;
+    private int next;
+
+    @Setup
+    public void setup(BenchmarkContext context) {
+        this.shader = ShaderProgram.DEFAULT;
+    }
+
+    @Benchmark
+    public void setUniformMatrix() {
+        this.next ^= 1;
+        this.shader.setUniformMatrix("transformMatrix",
+                                     this.TRANSFORMS[this.next]);
+    }
+
+    @Benchmark
+    public void setUniformMatrixUnchanged() {
+        this.shader.setUniformMatrix("transformMatrix", this.TRANSFORMS[0]);
+    }
+
+}
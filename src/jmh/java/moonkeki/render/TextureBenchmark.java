@@ -0,0 +1,35 @@
+package moonkeki.render;
+
+import org.lwjgl.system.MemoryUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntBinaryOperator;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class TextureBenchmark {
+
+    private static final IntBinaryOperator TEXELS = (i, j) -> i * 31 + j;
+
+    @Param({"64", "512"})
+    private int size;
+
+    @Benchmark
+    public int toByteBuffer() {
+        final ByteBuffer DATA = Texture.toByteBuffer(this.size, this.size,
+                                                     TextureBenchmark.TEXELS);
+        final int REMAINING = DATA.remaining();
+        MemoryUtil.memFree(DATA);
+        return REMAINING;
+    }
+
+}
@@ -1,5 +1,9 @@
 package moonkeki.app;
 
+import moonkeki.render.FrameCapture;
+import moonkeki.render.GpuTimer;
+import moonkeki.render.RenderState;
+import moonkeki.render.RenderStatistics;
 import moonkeki.render.WindowRegion;
 import org.lwjgl.glfw.GLFW;
 import org.lwjgl.glfw.GLFWErrorCallback;
@@ -13,6 +17,10 @@ import moonkeki.render.Canvas;
 import java.nio.IntBuffer;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Exchanger;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.BiFunction;
 
 import static org.lwjgl.glfw.Callbacks.glfwFreeCallbacks;
@@ -21,8 +29,8 @@ import static org.lwjgl.system.MemoryStack.stackPush;
 
 public final class Application {
 
-    public interface Core extends AutoCloseable {
-        void next(double dt);
+    //What Application drives, whether a Core or a PipelinedCore
+    public interface Lifecycle extends AutoCloseable {
         void onWindowResize(int windowWidth, int windowHeight);
         void pause();
         void resume();
@@ -31,6 +39,148 @@ public final class Application {
         void close();
     }
 
+    public interface Core extends Lifecycle {
+        void next(double dt);
+    }
+
+    /**
+     * A {@link Lifecycle} whose frames are pipelined: while the GL thread
+     * renders frame N, frame N + 1 is updated on a separate logic thread. The
+     * frame data, e.g. the {@link moonkeki.render.CommandList}s recorded by
+     * update, is double-buffered, i.e. two frames are created and handed back
+     * and forth between the threads, so a frame is never accessed by both
+     * threads at once.
+     *
+     * <p>{@link #onWindowResize(int, int)}, {@link #pause()} and {@link
+     * #resume()} are called on the logic thread, between updates. They don't
+     * wait for a frame to be rendered, so e.g. pause is delivered within about
+     * 100 ms of the window being minimized, even though no frames are
+     * rendered while it is. The rest, including {@link #close()}, are called
+     * on the GL thread.
+     */
+    public interface PipelinedCore<F> extends Lifecycle {
+        //Called twice, before the first frame
+        F createFrame();
+        //Called on the logic thread, so it must not make OpenGL calls
+        void update(double dt, F frame);
+        void render(F frame);
+    }
+
+    //The logic thread of a PipelinedCore, and the hand-off of its frames
+    private static final class Pipeline<F> {
+        private static final long POLL_MILLIS = 100L;
+
+        private final PipelinedCore<F> CORE;
+        private final Exchanger<F> EXCHANGER = new Exchanger<>();
+        //Run on the logic thread, before the next update
+        private final Queue<Runnable> EVENTS = new ConcurrentLinkedQueue<>();
+        private final Thread LOGIC_THREAD;
+        private volatile Throwable failure;
+        private F frame; //GL thread only
+        private Long prevTimeStamp = null; //logic thread only
+
+        Pipeline(PipelinedCore<F> core) {
+            this.CORE = core;
+            this.frame = core.createFrame();
+            final F LOGIC_FRAME = core.createFrame();
+            this.LOGIC_THREAD = new Thread(() -> this.run(LOGIC_FRAME),
+                                           "Logic");
+            this.LOGIC_THREAD.setDaemon(true);
+        }
+
+        void start() {
+            this.LOGIC_THREAD.start();
+        }
+
+        void post(Runnable event) {
+            this.EVENTS.add(event);
+        }
+
+        void pause() {
+            this.post(() -> {
+                this.CORE.pause();
+                this.prevTimeStamp = null;
+            });
+        }
+
+        //Hands the rendered frame to the logic thread, and renders the one it
+        //updated meanwhile
+        void render() throws InterruptedException {
+            F updated = null;
+            while (null == updated) {
+                if (this.failure != null) {
+                    throw new IllegalStateException("The logic thread " +
+                            "failed.", this.failure);
+                }//end if
+
+                try {
+                    updated = this.EXCHANGER.exchange(this.frame,
+                            Pipeline.POLL_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException ignored) {
+
+                }
+            }//end while
+            this.frame = updated;
+
+            this.CORE.render(this.frame);
+        }
+
+        //Waits for the logic thread to end, even if the GL thread is
+        //interrupted, so that the Core can be closed safely
+        void stop() {
+            this.LOGIC_THREAD.interrupt();
+            boolean interrupted = false;
+            while (this.LOGIC_THREAD.isAlive()) {
+                try {
+                    this.LOGIC_THREAD.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }//end while
+
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }//end if
+        }
+
+        private void run(F frame) {
+            try {
+                //Whether frame is updated and waits for the GL thread
+                boolean updated = false;
+                while (!Thread.currentThread().isInterrupted()) {
+                    Runnable event;
+                    while ((event = this.EVENTS.poll()) != null) {
+                        event.run();
+                    }//end while
+
+                    if (!updated) {
+                        final long CURRENT_TIMESTAMP = System.nanoTime();
+                        final double dt = this.prevTimeStamp != null ?
+                                (CURRENT_TIMESTAMP - this.prevTimeStamp) /
+                                1_000_000_000.0 : 0.0;
+                        this.prevTimeStamp = CURRENT_TIMESTAMP;
+                        this.CORE.update(dt, frame);
+                        updated = true;
+                    }//end if
+
+                    //Times out so that the events are run even when no frames
+                    //are rendered, e.g. while the window is minimized
+                    try {
+                        frame = this.EXCHANGER.exchange(frame,
+                                Pipeline.POLL_MILLIS, TimeUnit.MILLISECONDS);
+                        updated = false;
+                    } catch (TimeoutException ignored) {
+
+                    }
+                }//end while
+            } catch (InterruptedException ignored) {
+                //Stopped
+            } catch (Throwable t) {
+                this.failure = t;
+            }
+        }
+    }
+
     public static final class Builder {
         @FunctionalInterface
         public interface WindowPositionFunction {
@@ -45,11 +195,35 @@ public final class Application {
         //(monitorWidth, monitorHeight) -> windowSize
         private BiFunction<Integer, Integer, Size> windowSizeFunction =
                 Size::new;
-        private BiFunction<Integer, Integer, Core> coreSupplier;
+        private BiFunction<Integer, Integer, ? extends Lifecycle> coreSupplier;
         private boolean windowDecorated = true;
+        private Size headlessSize; //null unless headless
 
         private Builder() {}
 
+        //Renders offscreen, into a default framebuffer of size that is never
+        //shown, e.g. for benchmarks and golden-image tests on build agents
+        //without a display or a GPU. Where GLFW supports it, its null platform
+        //is used with an EGL context, which Mesa provides in software
+        //(llvmpipe). The window position, size and decoration are ignored,
+        //and there is no vsync.
+        public Builder headless(Size size) {
+            //A Size is positive, so the frames are never skipped as if the
+            //window were minimized
+            if (null == size) {
+                throw new IllegalArgumentException("Argument size can't be " +
+                        "null.");
+            }//end if
+
+            this.headlessSize = size;
+            return this;
+        }
+
+        public Builder windowed() {
+            this.headlessSize = null;
+            return this;
+        }
+
         public Builder ofWindowPosition(WindowPositionFunction
                                         windowPositionFunction) {
             this.windowPositionFunction = windowPositionFunction;
@@ -73,8 +247,9 @@ public final class Application {
             return this;
         }
 
-        //(windowWidth, windowHeight) -> Core
-        public void build(BiFunction<Integer, Integer, Core> coreSupplier) {
+        //(windowWidth, windowHeight) -> Core or PipelinedCore
+        public void build(BiFunction<Integer, Integer, ? extends Lifecycle>
+                          coreSupplier) {
             this.coreSupplier = coreSupplier;
             new Application(this).lifecycle();
         }
@@ -101,26 +276,43 @@ public final class Application {
     private static final List<AutoCloseable> CLOSE_LIST = new LinkedList<>();
 
     private long windowId;
-    private Core core;
+    private Lifecycle core;
+    private Pipeline<?> pipeline; //null unless the core is a PipelinedCore
     private Long prevTimeStamp = null;
 
     private Application(Builder builder) {
         GLFWErrorCallback.createPrint(System.err).set();
 
+        final boolean HEADLESS = builder.headlessSize != null;
+        //Needs no display server
+        final boolean NULL_PLATFORM = HEADLESS &&
+                GLFW.glfwPlatformSupported(GLFW.GLFW_PLATFORM_NULL);
+        if (NULL_PLATFORM) {
+            GLFW.glfwInitHint(GLFW.GLFW_PLATFORM, GLFW.GLFW_PLATFORM_NULL);
+        }
+
         if (!GLFW.glfwInit()) {
             throw new IllegalStateException("Can't initialize GLFW.");
         }
 
         GLFW.glfwDefaultWindowHints();
         GLFW.glfwWindowHint(GLFW.GLFW_VISIBLE, GLFW.GLFW_FALSE);
-        GLFW.glfwWindowHint(GLFW.GLFW_RESIZABLE, GLFW.GLFW_TRUE);
+        GLFW.glfwWindowHint(GLFW.GLFW_RESIZABLE, HEADLESS ? GLFW.GLFW_FALSE :
+                                                            GLFW.GLFW_TRUE);
+        //Depth tested BatchRenderers may draw onto the window
+        GLFW.glfwWindowHint(GLFW.GLFW_DEPTH_BITS, 24);
         GLFW.glfwWindowHint(GLFW_DECORATED, builder.windowDecorated ? GLFW_TRUE
                 : GLFW.GLFW_FALSE);
+        if (NULL_PLATFORM) {
+            GLFW.glfwWindowHint(GLFW.GLFW_CONTEXT_CREATION_API,
+                                GLFW.GLFW_EGL_CONTEXT_API);
+        }
 
-        GLFWVidMode videoMode = GLFW.glfwGetVideoMode(
-                GLFW.glfwGetPrimaryMonitor());
-        Size windowSize = builder.windowSizeFunction.apply(
-                videoMode.width(), videoMode.height());
+        GLFWVidMode videoMode = HEADLESS ? null :
+                GLFW.glfwGetVideoMode(GLFW.glfwGetPrimaryMonitor());
+        Size windowSize = HEADLESS ? builder.headlessSize :
+                builder.windowSizeFunction.apply(videoMode.width(),
+                                                 videoMode.height());
         final long WINDOW_ID = GLFW.glfwCreateWindow(windowSize.width(),
                 windowSize.height(), builder.windowTitle, MemoryUtil.NULL,
                 MemoryUtil.NULL);
@@ -128,37 +320,53 @@ public final class Application {
             throw new RuntimeException("Can't create GLFW window.");
         }
 
-        try (MemoryStack stack = stackPush()) {
-            IntBuffer windowWidthBuffer = stack.mallocInt(1);
-            IntBuffer windowHeightBuffer = stack.mallocInt(1);
-            GLFW.glfwGetWindowSize(WINDOW_ID, windowWidthBuffer,
-                    windowHeightBuffer);
-
-            Position windowPosition = builder.windowPositionFunction
-                    .apply(videoMode.width(), videoMode.height(),
-                            windowWidthBuffer.get(0), windowHeightBuffer.get(0));
-            GLFW.glfwSetWindowPos(WINDOW_ID, windowPosition.x(),
-                    windowPosition.y());
+        if (!HEADLESS) {
+            try (MemoryStack stack = stackPush()) {
+                IntBuffer windowWidthBuffer = stack.mallocInt(1);
+                IntBuffer windowHeightBuffer = stack.mallocInt(1);
+                GLFW.glfwGetWindowSize(WINDOW_ID, windowWidthBuffer,
+                        windowHeightBuffer);
+
+                Position windowPosition = builder.windowPositionFunction
+                        .apply(videoMode.width(), videoMode.height(),
+                                windowWidthBuffer.get(0),
+                                windowHeightBuffer.get(0));
+                GLFW.glfwSetWindowPos(WINDOW_ID, windowPosition.x(),
+                        windowPosition.y());
+            }
         }
 
         GLFW.glfwMakeContextCurrent(WINDOW_ID);
-        GLFW.glfwSwapInterval(1); //Vsync on
+        //Vsync on, unless there is no display to sync with
+        GLFW.glfwSwapInterval(HEADLESS ? 0 : 1);
 
-        GLFW.glfwShowWindow(WINDOW_ID);
+        if (!HEADLESS) {
+            GLFW.glfwShowWindow(WINDOW_ID);
+        }
         GL.createCapabilities();
-        GL11.glEnable(GL11.GL_BLEND);
-        GL11.glBlendFunc(GL11.GL_SRC_ALPHA, GL11.GL_ONE_MINUS_SRC_ALPHA);
+        RenderState.invalidate();
+        RenderState.enableBlend();
+        RenderState.blendFunc(GL11.GL_SRC_ALPHA, GL11.GL_ONE_MINUS_SRC_ALPHA);
 
         final Canvas.Size SIZE = WindowRegion.WINDOW.getSize();
         this.core = builder.coreSupplier.apply(SIZE.width(), SIZE.height());
         this.windowId = WINDOW_ID;
 
         GLFW.glfwSetWindowIconifyCallback(WINDOW_ID, (windowId, iconified) -> {
-            if (iconified) {
-                Application.this.core.pause();
-                Application.this.prevTimeStamp = null;
+            if (null == Application.this.pipeline) {
+                if (iconified) {
+                    Application.this.core.pause();
+                    Application.this.prevTimeStamp = null;
+                } else {
+                    Application.this.core.resume();
+                }
             } else {
-                Application.this.core.resume();
+                if (iconified) {
+                    Application.this.pipeline.pause();
+                } else {
+                    Application.this.pipeline.post(Application.this.core::
+                                                   resume);
+                }
             }
         });
     }
@@ -183,7 +391,29 @@ public final class Application {
             return;
         }//end if
 
-        this.core.resume();
+        //null if the core is a PipelinedCore
+        final Core CORE = this.core instanceof Core c ? c : null;
+        if (this.core instanceof PipelinedCore<?> p) {
+            this.pipeline = new Pipeline<>(p);
+            this.pipeline.post(this.core::resume);
+            this.pipeline.start();
+        } else {
+            this.core.resume();
+        }//end if
+
+        try {
+            this.runFrames(CORE);
+        } finally {
+            //Before the core is closed, even if rendering failed
+            if (this.pipeline != null) {
+                this.pipeline.stop();
+            }//end if
+        }
+    }
+
+    //core is null for a PipelinedCore
+    private void runFrames(Core core) {
+        boolean loop = true;
         int prevWindowWidth;
         int prevWindowHeight;
         {
@@ -193,8 +423,10 @@ public final class Application {
         }
 
         while (loop) {
-            GL11.glEnable(GL11.GL_BLEND);
-            GL11.glBlendFunc(GL11.GL_SRC_ALPHA, GL11.GL_ONE_MINUS_SRC_ALPHA);
+            //Skipped unless the Core changed them
+            RenderState.enableBlend();
+            RenderState.blendFunc(GL11.GL_SRC_ALPHA,
+                                  GL11.GL_ONE_MINUS_SRC_ALPHA);
 
             final int WINDOW_WIDTH;
             final int WINDOW_HEIGHT;
@@ -214,25 +446,40 @@ public final class Application {
                 windowSizeChanged = true;
             }
 
-            if (windowSizeChanged) {
+            if (windowSizeChanged && this.pipeline != null) {
+                this.pipeline.post(() -> this.core.onWindowResize(
+                        WINDOW_WIDTH, WINDOW_HEIGHT));
+            } else if (windowSizeChanged) {
                 this.core.onWindowResize(WINDOW_WIDTH, WINDOW_HEIGHT);
             }
 
-            if (WINDOW_WIDTH != 0 && WINDOW_HEIGHT != 0) {
+            if (WINDOW_WIDTH != 0 && WINDOW_HEIGHT != 0 &&
+                this.pipeline != null) {
+                try {
+                    this.pipeline.render();
+                } catch (InterruptedException e) {
+                    //The GL thread is asked to stop
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            } else if (WINDOW_WIDTH != 0 && WINDOW_HEIGHT != 0) {
                 final long CURRENT_TIMESTAMP = System.nanoTime();
                 final double dt = prevTimeStamp != null ?
                         (CURRENT_TIMESTAMP - prevTimeStamp) / 1_000_000_000.0 :
                         0.0;
                 prevTimeStamp = CURRENT_TIMESTAMP;
-                this.core.next(dt);
+                core.next(dt);
             }
 
             GLFW.glfwSwapBuffers(this.windowId);
+            GpuTimer.endFrame();
+            RenderStatistics.endFrame();
+            FrameCapture.endFrame();
             GLFW.glfwPollEvents();
 
             loop = !GLFW.glfwWindowShouldClose(this.windowId) &&
                    !this.core.isClosed();
-        }
+        }//end while
     }
 
     private void close() {
@@ -2,13 +2,18 @@ package moonkeki.render;
 
 import org.lwjgl.opengl.GL11;
 import org.lwjgl.opengl.GL15;
-import org.lwjgl.opengl.GL20;
 import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL32;
 import org.lwjgl.system.MemoryStack;
 import org.lwjgl.system.MemoryUtil;
 
 import java.awt.geom.AffineTransform;
-import java.nio.FloatBuffer;
+import java.awt.geom.NoninvertibleTransformException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
 import java.util.function.Consumer;
 
 import static org.lwjgl.opengl.GL15.GL_ARRAY_BUFFER;
@@ -42,8 +47,19 @@ public class BatchRenderer extends PixmapRenderer implements AutoCloseable {
     }
 
     public static final class Builder extends AbstractBuilder<Builder> {
-        private int bufferSize = BatchRenderer.FLOATS_PER_QUAD * 1000; //96kB
+        private int capacity = 1000; //64kB
         private boolean shortLived;
+        private int streamRegions; //0 if not streaming
+        private int textureSlots = 1;
+        private boolean deferred;
+        private boolean stable;
+        private boolean culling;
+        private boolean halfFloatPositions;
+        private boolean packedTexCoords;
+        private boolean colored;
+        private boolean depthTested;
+        //name -> components
+        private final Map<String, Integer> ATTRIBUTES = new LinkedHashMap<>();
 
         private Builder() {}
 
@@ -53,8 +69,160 @@ public class BatchRenderer extends PixmapRenderer implements AutoCloseable {
                         "be positive.");
             }//end if
 
-            this.bufferSize = Math.multiplyExact(
-                    BatchRenderer.FLOATS_PER_QUAD, capacity);
+            this.capacity = capacity;
+            return this;
+        }
+
+        //Binds up to textureSlots textures to separate texture units, so the
+        //batch has to flush on a texture switch only if all slots are taken.
+        //If the shader is ShaderProgram.DEFAULT, ShaderProgram.MULTI_TEXTURE
+        //will be used instead. Custom shaders must declare a v_texIndex vertex
+        //attribute and a samplers uniform array.
+        public Builder ofTextureSlots(int textureSlots) {
+            if (textureSlots < 1 ||
+                textureSlots > Shader.Fragment.TEXTURE_SLOTS) {
+                throw new IllegalArgumentException("Argument textureSlots " +
+                        "must be in [1, %d].".formatted(
+                        Shader.Fragment.TEXTURE_SLOTS));
+            }//end if
+
+            this.textureSlots = textureSlots;
+            return this;
+        }
+
+        //Uploads every flush into the next free region of a ring, instead of
+        //re-specifying a single buffer
+        public Builder streaming() {
+            return this.streaming(BatchRenderer.DEFAULT_STREAM_REGIONS);
+        }
+
+        public Builder streaming(int regions) {
+            if (regions < 2) {
+                throw new IllegalArgumentException("Argument regions must " +
+                        "be at least 2.");
+            }//end if
+
+            this.streamRegions = regions;
+            return this;
+        }
+
+        public Builder nonStreaming() {
+            this.streamRegions = 0;
+            return this;
+        }
+
+        //Records the queued DrawCommands instead of writing them right away.
+        //On flush(), they are sorted by (layer, material, texture) and emitted
+        //in as few draw calls as possible. The layer is taken from
+        //DrawCommand.getLayer(), the Material from DrawCommand.getMaterial().
+        public Builder deferred() {
+            return this.deferred(false);
+        }
+
+        //If stable, the submission order is kept within a layer, i.e. the
+        //DrawCommands are sorted only by their layer
+        public Builder deferred(boolean stable) {
+            this.deferred = true;
+            this.stable = stable;
+            return this;
+        }
+
+        //DrawCommands are written in submission order, as they are queued
+        public Builder immediate() {
+            this.deferred = false;
+            this.stable = false;
+            return this;
+        }
+
+        //Drops the quads whose transformed bounds lie entirely outside the
+        //canvas, before they take up space in the batch
+        public Builder culling() {
+            this.culling = true;
+            return this;
+        }
+
+        public Builder nonCulling() {
+            this.culling = false;
+            return this;
+        }
+
+        //Writes positions as half floats, which are exact only for integers
+        //in [-2048, 2048], so it suits canvas-space data of pixel art. The
+        //TRANSFORM of the BatchRenderer is applied afterwards, on the GPU.
+        public Builder halfFloatPositions() {
+            this.halfFloatPositions = true;
+            return this;
+        }
+
+        public Builder floatPositions() {
+            this.halfFloatPositions = false;
+            return this;
+        }
+
+        //Writes texture coordinates as normalized unsigned shorts
+        public Builder packedTexCoords() {
+            this.packedTexCoords = true;
+            return this;
+        }
+
+        public Builder floatTexCoords() {
+            this.packedTexCoords = false;
+            return this;
+        }
+
+        //Adds a packed RGBA8 color to every vertex, as the v_color vertex
+        //attribute. It is the tint of the DrawCommand, opaque white unless
+        //set. If the shader is ShaderProgram.DEFAULT and there is a single
+        //texture slot, ShaderProgram.TINTED will be used instead.
+        public Builder colored() {
+            this.colored = true;
+            return this;
+        }
+
+        public Builder uncolored() {
+            this.colored = false;
+            return this;
+        }
+
+        //Gives every quad the depth of its layer, higher layers being nearer,
+        //and draws with the depth test on. If deferred, the quads of a
+        //Material.Blend.OPAQUE Material are drawn first, front to back and
+        //writing their depth, so the texels they hide are rejected before
+        //shading. The others are drawn after them, back to front, without
+        //writing their depth. The canvas must have a depth buffer, that
+        //Canvas.clearDepth() resets. Custom shaders must declare a v_depth
+        //vertex attribute, to be taken as the z of the position.
+        public Builder depthTested() {
+            this.depthTested = true;
+            return this;
+        }
+
+        public Builder nonDepthTested() {
+            this.depthTested = false;
+            return this;
+        }
+
+        //Adds a vertex attribute of components floats, set per DrawCommand
+        //with DrawCommand.withAttribute and 0 unless set. The shader must
+        //declare an input named name, that is sourced automatically.
+        public Builder ofAttribute(String name, int components) {
+            if (components < 1 || components > 4) {
+                throw new IllegalArgumentException("Argument components " +
+                        "must be in [1, 4].");
+            }//end if
+
+            if (BatchRenderer.BUILT_IN_ATTRIBUTES.contains(name) ||
+                this.ATTRIBUTES.containsKey(name)) {
+                throw new IllegalArgumentException("Argument name is " +
+                        "already the name of a vertex attribute.");
+            }//end if
+
+            this.ATTRIBUTES.put(name, components);
+            return this;
+        }
+
+        public Builder clearAttributes() {
+            this.ATTRIBUTES.clear();
             return this;
         }
 
@@ -97,10 +265,14 @@ public class BatchRenderer extends PixmapRenderer implements AutoCloseable {
                 return BatchRenderer.this;
             }
 
+            RenderStatistics.countRebuild();
             final BatchRenderer NEW_BR = new BatchRenderer(this);
             BatchRenderer.this.vertices = null;
             BatchRenderer.this.dispenser = null;
-            BatchRenderer.this.currentTexture = null;
+            BatchRenderer.this.stream = null;
+            BatchRenderer.this.textures = null;
+            BatchRenderer.this.deferredQueue = null;
+            BatchRenderer.this.opaqueQueue = null;
             BatchRenderer.this.closed = true;
 
             return NEW_BR;
@@ -124,8 +296,68 @@ public class BatchRenderer extends PixmapRenderer implements AutoCloseable {
 
     public final class DrawCommand extends PixmapRenderer.AbstractDrawCommand
                                 implements PixmapRenderer.AttachedDrawCommand {
+        //The tint and attributes, in the format of the extras of a quad
+        private final float[] EXTRAS = BatchRenderer.this.DEFAULT_EXTRAS
+                                                         .clone();
+
+        private Material material = Material.DEFAULT;
+
         private DrawCommand() {}
 
+        public BatchRenderer.DrawCommand ofMaterial(Material material) {
+            this.material = material;
+            return this;
+        }
+
+        public Material getMaterial() {
+            return this.material;
+        }
+
+        //rgba is packed as 0xRRGGBBAA. Only for a colored BatchRenderer.
+        public BatchRenderer.DrawCommand ofTint(int rgba) {
+            if (!BatchRenderer.this.COLORED) {
+                throw new IllegalStateException("This BatchRenderer is not " +
+                        "colored.");
+            }//end if
+
+            this.EXTRAS[0] = rgba >>> 16;
+            this.EXTRAS[1] = rgba & 0xFFFF;
+            return this;
+        }
+
+        //The components are clamped to [0, 1]
+        public BatchRenderer.DrawCommand ofTint(float red, float green,
+                                                float blue, float alpha) {
+            return this.ofTint(BatchRenderer.toUnsignedByte(red) << 24 |
+                               BatchRenderer.toUnsignedByte(green) << 16 |
+                               BatchRenderer.toUnsignedByte(blue) << 8 |
+                               BatchRenderer.toUnsignedByte(alpha));
+        }
+
+        //Packed as 0xRRGGBBAA
+        public int getTint() {
+            return BatchRenderer.this.COLORED ?
+                   BatchRenderer.tintOf(this.EXTRAS, 0) :
+                   BatchRenderer.OPAQUE_WHITE;
+        }
+
+        //name is an attribute of the Builder, and values has its components
+        public BatchRenderer.DrawCommand withAttribute(String name,
+                                                       float... values) {
+            final int INDEX = BatchRenderer.this.attributeIndexOf(name);
+            if (values.length != BatchRenderer.this.ATTRIBUTE_COMPONENTS[
+                    INDEX]) {
+                throw new IllegalArgumentException("Argument array values " +
+                        "must have a length of %d.".formatted(
+                        BatchRenderer.this.ATTRIBUTE_COMPONENTS[INDEX]));
+            }//end if
+
+            System.arraycopy(values, 0, this.EXTRAS,
+                             BatchRenderer.this.ATTRIBUTE_OFFSETS[INDEX],
+                             values.length);
+            return this;
+        }
+
         @Override
         public BatchRenderer.DrawCommand ofPixmap(Pixmap pixmap) {
             return (BatchRenderer.DrawCommand) super.ofPixmap(pixmap);
@@ -186,6 +418,11 @@ public class BatchRenderer extends PixmapRenderer implements AutoCloseable {
             return (BatchRenderer.DrawCommand) super.withTransform(transform);
         }
 
+        @Override
+        public BatchRenderer.DrawCommand onLayer(int layer) {
+            return (BatchRenderer.DrawCommand) super.onLayer(layer);
+        }
+
         @Override
         public void process() {
             this.queue();
@@ -194,6 +431,10 @@ public class BatchRenderer extends PixmapRenderer implements AutoCloseable {
         public void queue() {
             BatchRenderer.this.queue(this);
         }
+
+        private boolean isAttachedTo(BatchRenderer batchRenderer) {
+            return BatchRenderer.this == batchRenderer;
+        }
     }
 
     public static Builder builder() {
@@ -205,52 +446,242 @@ public class BatchRenderer extends PixmapRenderer implements AutoCloseable {
         return BatchRenderer.builder().build();
     }
 
-    private static final int VERTICES_PER_QUAD = 6;
-    private static final int FLOATS_PER_QUAD = 4 *
-            BatchRenderer.VERTICES_PER_QUAD;
+    //The flags of the primitive queue()
+    public static final int MIRRORED_X = 1;
+    public static final int MIRRORED_Y = 1 << 1;
+
+    private static final int VERTICES_PER_QUAD = 4;
+    private static final int OPAQUE_WHITE = 0xFFFFFFFF;
+    private static final Set<String> BUILT_IN_ATTRIBUTES = Set.of("position",
+            "v_texCoord", "v_color", "v_depth", "v_texIndex");
+    //The tint is carried as its 2 halves of 16 bits, which floats represent
+    //exactly, unlike the raw bits of a float
+    private static final int TINT_FLOATS = 2;
+    private static final float MAX_UNSIGNED_SHORT = 0xFFFF;
+    private static final int DEFAULT_STREAM_REGIONS = 3;
 
     //contains texture coordinates too
-    private FloatBuffer vertices;
-    private Consumer<FloatBuffer> dispenser;
+    private ByteBuffer vertices;
+    private Consumer<ByteBuffer> dispenser;
+    private StreamBuffer stream; //null if not streaming
     private int size;
     private final Canvas CANVAS;
     private final ShaderProgram SHADER;
     private final AffineTransform TRANSFORM;
     private final int CANVAS_FRAMEBUFFER_ID;
     private final int BUFFER_OBJECT_ID;
-    private Texture currentTexture; //Can be null
+    private final VertexLayout LAYOUT;
+    private final int BYTES_PER_QUAD;
+    private final boolean HALF_FLOAT_POSITIONS;
+    private final boolean PACKED_TEX_COORDS;
+    private final boolean COLORED;
+    private final boolean DEPTH_TESTED;
+    //The custom vertex attributes, in the order of LAYOUT
+    private final String[] ATTRIBUTE_NAMES;
+    private final int[] ATTRIBUTE_COMPONENTS;
+    //Of the attribute values, into the extras of a quad
+    private final int[] ATTRIBUTE_OFFSETS;
+    //The extras of a quad: the tint if COLORED, followed by the values of the
+    //custom attributes
+    private final int EXTRA_FLOATS;
+    private final float[] DEFAULT_EXTRAS;
+    private final int CAPACITY; //in quads
+    //The textures bound to the texture units, in [0, textureCount)
+    private Texture[] textures;
+    //0 to textures.length - 1, the units of the samplers uniform
+    private final int[] SAMPLER_UNITS;
+    private int textureCount;
+    private int lastSlot;
+    private DeferredQueue deferredQueue; //null if immediate
+    //The quads of an opaque Material, by inverted layer so that they are
+    //sorted front to back. null unless deferred and DEPTH_TESTED.
+    private DeferredQueue opaqueQueue;
+    //Of the vertices written so far
+    private Material material = Material.DEFAULT;
+    //A quad in the DeferredQueue record format, reused by queue()
+    private final float[] QUAD = new float[DeferredQueue.FLOATS_PER_RECORD];
+    private final boolean CULLING;
+    //The canvas rectangle mapped back through TRANSFORM, as the 4 corners
+    //followed by minX, minY, maxX, maxY of their bounds. Refreshed once per
+    //batch, as querying the size of the canvas may be expensive.
+    private final double[] VIEW = new double[12];
+    private boolean viewStale = true;
+    private long culledCount;
+    private long emittedCount;
     private boolean closed;
 
+    private static ShaderProgram resolveShader(ShaderProgram shader,
+                                               int textureSlots,
+                                               boolean colored) {
+        if (!ShaderProgram.DEFAULT.equals(shader)) {
+            return shader;
+        }//end if
+
+        if (textureSlots > 1) {
+            return colored ? ShaderProgram.TINTED_MULTI_TEXTURE :
+                             ShaderProgram.MULTI_TEXTURE;
+        }//end if
+
+        return colored ? ShaderProgram.TINTED : shader;
+    }
+
+    private static VertexLayout layoutOf(boolean halfFloatPositions,
+                                         boolean packedTexCoords,
+                                         boolean colored,
+                                         String[] attributeNames,
+                                         int[] attributeComponents,
+                                         boolean depthTested,
+                                         boolean multiTexture) {
+        if (!halfFloatPositions && !packedTexCoords && !colored &&
+            0 == attributeNames.length && !depthTested) {
+            return multiTexture ? VertexLayout.MULTI_TEXTURE :
+                                  VertexLayout.DEFAULT;
+        }//end if
+
+        final VertexLayout.Builder BUILDER = VertexLayout.builder();
+        if (halfFloatPositions) {
+            BUILDER.of("position", 2, GL30.GL_HALF_FLOAT, false);
+        } else {
+            BUILDER.ofFloats("position", 2);
+        }//end if
+
+        if (packedTexCoords) {
+            BUILDER.of("v_texCoord", 2, GL11.GL_UNSIGNED_SHORT, true);
+        } else {
+            BUILDER.ofFloats("v_texCoord", 2);
+        }//end if
+
+        if (colored) {
+            BUILDER.of("v_color", 4, GL11.GL_UNSIGNED_BYTE, true);
+        }//end if
+
+        for (int i = 0; i < attributeNames.length; ++i) {
+            BUILDER.ofFloats(attributeNames[i], attributeComponents[i]);
+        }//end for
+
+        if (depthTested) {
+            BUILDER.ofFloats("v_depth", 1);
+        }//end if
+
+        if (multiTexture) {
+            BUILDER.ofFloats("v_texIndex", 1);
+        }//end if
+
+        return BUILDER.build();
+    }
+
     private BatchRenderer(Builder builder) {
-        if (builder.shortLived) {
+        this.HALF_FLOAT_POSITIONS = builder.halfFloatPositions;
+        this.PACKED_TEX_COORDS = builder.packedTexCoords;
+        this.COLORED = builder.colored;
+        this.DEPTH_TESTED = builder.depthTested;
+        this.ATTRIBUTE_NAMES = builder.ATTRIBUTES.keySet()
+                                                 .toArray(new String[0]);
+        this.ATTRIBUTE_COMPONENTS = new int[this.ATTRIBUTE_NAMES.length];
+        this.ATTRIBUTE_OFFSETS = new int[this.ATTRIBUTE_NAMES.length];
+        int extraFloats = this.COLORED ? BatchRenderer.TINT_FLOATS : 0;
+        for (int i = 0; i < this.ATTRIBUTE_NAMES.length; ++i) {
+            this.ATTRIBUTE_COMPONENTS[i] = builder.ATTRIBUTES.get(
+                    this.ATTRIBUTE_NAMES[i]);
+            this.ATTRIBUTE_OFFSETS[i] = extraFloats;
+            extraFloats += this.ATTRIBUTE_COMPONENTS[i];
+        }//end for
+        this.EXTRA_FLOATS = extraFloats;
+        this.DEFAULT_EXTRAS = new float[this.EXTRA_FLOATS];
+        if (this.COLORED) {
+            this.DEFAULT_EXTRAS[0] = BatchRenderer.OPAQUE_WHITE >>> 16;
+            this.DEFAULT_EXTRAS[1] = BatchRenderer.OPAQUE_WHITE & 0xFFFF;
+        }//end if
+        this.LAYOUT = BatchRenderer.layoutOf(this.HALF_FLOAT_POSITIONS,
+                                             this.PACKED_TEX_COORDS,
+                                             this.COLORED,
+                                             this.ATTRIBUTE_NAMES,
+                                             this.ATTRIBUTE_COMPONENTS,
+                                             this.DEPTH_TESTED,
+                                             builder.textureSlots > 1);
+        this.BYTES_PER_QUAD = this.LAYOUT.getStride() *
+                              BatchRenderer.VERTICES_PER_QUAD;
+        this.CAPACITY = builder.capacity;
+        final int BUFFER_SIZE = Math.multiplyExact(this.BYTES_PER_QUAD,
+                                                   this.CAPACITY);
+        if (builder.streamRegions > 0) {
+            this.stream = new StreamBuffer(BUFFER_SIZE, builder.streamRegions);
+        }//end if
+
+        if (this.stream != null && this.stream.isPersistent()) {
+            //We write straight into the mapped region
+            this.vertices = this.stream.region();
+            this.dispenser = b -> {};
+        } else if (builder.shortLived) {
             this.vertices = MemoryStack.stackPush()
-                                       .mallocFloat(builder.bufferSize);
+                                       .malloc(BUFFER_SIZE);
             this.dispenser = b -> MemoryStack.stackPop();
         } else {
-            this.vertices = MemoryUtil.memAllocFloat(builder.bufferSize);
+            this.vertices = MemoryUtil.memAlloc(BUFFER_SIZE);
             this.dispenser = MemoryUtil::memFree;
         }//end if
 
+        this.textures = new Texture[builder.textureSlots];
+        this.SAMPLER_UNITS = BatchRenderer.samplerUnits(builder.textureSlots);
+        this.deferredQueue = builder.deferred ?
+                             new DeferredQueue(builder.stable,
+                                               this.EXTRA_FLOATS) :
+                             null;
+        this.opaqueQueue = builder.deferred && this.DEPTH_TESTED ?
+                           new DeferredQueue(false, this.EXTRA_FLOATS) :
+                           null;
+        this.CULLING = builder.culling;
         this.CANVAS = builder.canvas;
-        this.SHADER = builder.shader;
+        this.SHADER = BatchRenderer.resolveShader(builder.shader,
+                                                  builder.textureSlots,
+                                                  this.COLORED);
         this.TRANSFORM = builder.transform;
         this.CANVAS_FRAMEBUFFER_ID = this.CANVAS.getBackend().equals(
                 WindowRegion.WINDOW.getBackend()) ? 0 :
-                GL30.glGenFramebuffers();
-        this.BUFFER_OBJECT_ID = GL15.glGenBuffers();
+                RenderState.genFramebuffer();
+        this.BUFFER_OBJECT_ID = this.stream != null ? this.stream.getId() :
+                                GL15.glGenBuffers();
     }
 
     private BatchRenderer(Rebuilder rebuilder) {
         this.vertices = rebuilder.getBufferedRenderer().vertices;
         this.dispenser = rebuilder.getBufferedRenderer().dispenser;
+        this.stream = rebuilder.getBufferedRenderer().stream;
         this.size = rebuilder.getBufferedRenderer().size;
+        this.textures = rebuilder.getBufferedRenderer().textures;
+        this.SAMPLER_UNITS = rebuilder.getBufferedRenderer().SAMPLER_UNITS;
+        this.textureCount = rebuilder.getBufferedRenderer().textureCount;
+        this.lastSlot = rebuilder.getBufferedRenderer().lastSlot;
+        this.deferredQueue = rebuilder.getBufferedRenderer().deferredQueue;
+        this.opaqueQueue = rebuilder.getBufferedRenderer().opaqueQueue;
+        this.CULLING = rebuilder.getBufferedRenderer().CULLING;
+        this.culledCount = rebuilder.getBufferedRenderer().culledCount;
+        this.emittedCount = rebuilder.getBufferedRenderer().emittedCount;
+        this.LAYOUT = rebuilder.getBufferedRenderer().LAYOUT;
+        this.HALF_FLOAT_POSITIONS = rebuilder.getBufferedRenderer()
+                                             .HALF_FLOAT_POSITIONS;
+        this.PACKED_TEX_COORDS = rebuilder.getBufferedRenderer()
+                                          .PACKED_TEX_COORDS;
+        this.COLORED = rebuilder.getBufferedRenderer().COLORED;
+        this.DEPTH_TESTED = rebuilder.getBufferedRenderer().DEPTH_TESTED;
+        this.ATTRIBUTE_NAMES = rebuilder.getBufferedRenderer().ATTRIBUTE_NAMES;
+        this.ATTRIBUTE_COMPONENTS = rebuilder.getBufferedRenderer()
+                                             .ATTRIBUTE_COMPONENTS;
+        this.ATTRIBUTE_OFFSETS = rebuilder.getBufferedRenderer()
+                                          .ATTRIBUTE_OFFSETS;
+        this.EXTRA_FLOATS = rebuilder.getBufferedRenderer().EXTRA_FLOATS;
+        this.DEFAULT_EXTRAS = rebuilder.getBufferedRenderer().DEFAULT_EXTRAS;
+        this.BYTES_PER_QUAD = rebuilder.getBufferedRenderer().BYTES_PER_QUAD;
+        this.CAPACITY = rebuilder.getBufferedRenderer().CAPACITY;
         this.CANVAS = rebuilder.canvas;
-        this.SHADER = rebuilder.shader;
+        this.SHADER = BatchRenderer.resolveShader(rebuilder.shader,
+                                                  this.textures.length,
+                                                  this.COLORED);
         this.TRANSFORM = rebuilder.transform;
 
         if (!this.CANVAS.getBackend().equals(WindowRegion.WINDOW.getBackend())
             && rebuilder.getBufferedRenderer().CANVAS_FRAMEBUFFER_ID == 0) {
-            this.CANVAS_FRAMEBUFFER_ID = GL30.glGenFramebuffers();
+            this.CANVAS_FRAMEBUFFER_ID = RenderState.genFramebuffer();
         } else {
             this.CANVAS_FRAMEBUFFER_ID = rebuilder.getBufferedRenderer()
                                                   .CANVAS_FRAMEBUFFER_ID;
@@ -258,7 +689,6 @@ public class BatchRenderer extends PixmapRenderer implements AutoCloseable {
 
         this.BUFFER_OBJECT_ID = rebuilder.getBufferedRenderer()
                 .BUFFER_OBJECT_ID;
-        this.currentTexture = rebuilder.getBufferedRenderer().currentTexture;
     }
 
     public Rebuilder rebuild() {
@@ -281,95 +711,141 @@ public class BatchRenderer extends PixmapRenderer implements AutoCloseable {
     }
 
     public void queue(PixmapRenderer.DrawCommand drawCommand) {
+        final AffineTransform T = PixmapRenderer.transformOf(drawCommand);
+        final int FLAGS = (drawCommand.isXMirrored() ?
+                           BatchRenderer.MIRRORED_X : 0) |
+                          (drawCommand.isYMirrored() ?
+                           BatchRenderer.MIRRORED_Y : 0);
+        //The tint and attributes of another BatchRenderer may not fit
+        final BatchRenderer.DrawCommand ATTACHED = drawCommand instanceof
+                BatchRenderer.DrawCommand d && d.isAttachedTo(this) ? d : null;
+        final float[] EXTRAS = ATTACHED != null ? ATTACHED.EXTRAS :
+                                                  this.DEFAULT_EXTRAS;
+        final Material MATERIAL = drawCommand instanceof
+                BatchRenderer.DrawCommand d ? d.material : Material.DEFAULT;
+        this.queue(drawCommand.getPixmap(),
+                   drawCommand.getX(), drawCommand.getY(),
+                   drawCommand.getWidth(), drawCommand.getHeight(),
+                   T.getScaleX(), T.getShearY(),
+                   T.getShearX(), T.getScaleY(),
+                   T.getTranslateX(), T.getTranslateY(),
+                   FLAGS, drawCommand.getLayer(), EXTRAS, MATERIAL);
+    }
+
+    //Same as queue(pixmap, x, y, width, height, m00, m10, m01, m11, m02, m12,
+    //flags, 0)
+    public void queue(Pixmap pixmap, double x, double y,
+                      double width, double height,
+                      double m00, double m10, double m01, double m11,
+                      double m02, double m12, int flags) {
+        this.queue(pixmap, x, y, width, height, m00, m10, m01, m11, m02, m12,
+                   flags, 0);
+    }
+
+    //Queues a quad without going through a DrawCommand, so nothing is
+    //allocated. The coefficients are in the order of the AffineTransform
+    //constructor and flags is a combination of MIRRORED_X and MIRRORED_Y.
+    //The tint and attributes are the defaults.
+    public void queue(Pixmap pixmap, double x, double y,
+                      double width, double height,
+                      double m00, double m10, double m01, double m11,
+                      double m02, double m12, int flags, int layer) {
+        this.queue(pixmap, x, y, width, height, m00, m10, m01, m11, m02, m12,
+                   flags, layer, this.DEFAULT_EXTRAS, Material.DEFAULT);
+    }
+
+    private void queue(Pixmap pixmap, double x, double y,
+                       double width, double height,
+                       double m00, double m10, double m01, double m11,
+                       double m02, double m12, int flags, int layer,
+                       float[] extras, Material material) {
         this.ensureOpen();
+        if (width < 0.0) {
+            throw new IllegalArgumentException("Argument width can't be " +
+                    "negative.");
+        }//end if
+
+        if (height < 0.0) {
+            throw new IllegalArgumentException("Argument height can't be " +
+                    "negative.");
+        }//end if
 
-        final Pixmap PIXMAP = drawCommand.getPixmap();
-        if (PIXMAP.isVoid() || 0.0 == drawCommand.getWidth() ||
-                               0.0 == drawCommand.getHeight()) {
+        if (pixmap.isVoid() || 0.0 == width || 0.0 == height) {
             return;
         }//end if
 
-        if (this.CANVAS.getBackend().equals(PIXMAP.getBackend())) {
+        final Texture TEXTURE = pixmap.getTexture();
+        if (this.CANVAS.getBackend().equals(TEXTURE)) {
             throw new IllegalArgumentException("The pixmap of the " +
                     "DrawCommand is the canvas of this BufferedRenderer.");
         }//end if
 
-        if (this.isFull() || !PIXMAP.getTexture().equals(this.currentTexture)) {
-            this.flush();
-        }//end if
+        PixmapRenderer.toQuad(this.QUAD, 0, pixmap, x, y, width, height,
+                              m00, m10, m01, m11, m02, m12,
+                              (flags & BatchRenderer.MIRRORED_X) != 0,
+                              (flags & BatchRenderer.MIRRORED_Y) != 0);
+        this.enqueue(TEXTURE, material, this.QUAD, 0, layer, extras);
+    }
 
-        final float MIN_U;
-        final float MAX_U;
-        final float MIN_V;
-        final float MAX_V;
+    //Queues the quads of commandLists, which may have been recorded on other
+    //threads, in the order of commandLists and then of recording. The usual
+    //culling, deferring and batching apply.
+    public void submit(CommandList... commandLists) {
+        this.ensureOpen();
+        final Object BACKEND = this.CANVAS.getBackend();
+        for (CommandList l : commandLists) {
+            final float[] DATA = l.data();
+            for (int i = 0; i < l.size(); ++i) {
+                final Texture TEXTURE = l.textureAt(i);
+                if (BACKEND.equals(TEXTURE)) {
+                    throw new IllegalArgumentException("The pixmap of a " +
+                            "quad is the canvas of this BufferedRenderer.");
+                }//end if
+
+                this.enqueue(TEXTURE, Material.DEFAULT, DATA, l.offsetOf(i),
+                             l.layerAt(i), this.DEFAULT_EXTRAS);
+            }//end for
+        }//end for
+    }
 
-        if (drawCommand.isXMirrored()) {
-            MIN_U = PIXMAP.getMaxU();
-            MAX_U = PIXMAP.getMinU();
-        } else {
-            MIN_U = PIXMAP.getMinU();
-            MAX_U = PIXMAP.getMaxU();
+    //Queues every sprite of sprites, at layer 0, in the order of their indices
+    public void submit(SpriteBuffer sprites) {
+        this.ensureOpen();
+        if (sprites.isBackedBy(this.CANVAS.getBackend())) {
+            throw new IllegalArgumentException("A pixmap of Argument sprites " +
+                    "is the canvas of this BufferedRenderer.");
         }//end if
 
-        if (drawCommand.isYMirrored()) {
-            MIN_V = PIXMAP.getMaxV();
-            MAX_V = PIXMAP.getMinV();
-        } else {
-            MIN_V = PIXMAP.getMinV();
-            MAX_V = PIXMAP.getMaxV();
-        }//end if
-
-        final double[] SRC_V = {
-                drawCommand.getX(),                           //bot-left.x
-                drawCommand.getY(),                           //bot-left.y
-                drawCommand.getX(),                           //top-left.x
-                drawCommand.getY() + drawCommand.getHeight(), //top-left.y
-                drawCommand.getX() + drawCommand.getWidth(),  //top-right.x
-                drawCommand.getY() + drawCommand.getHeight(), //top-right.y
-                drawCommand.getX() + drawCommand.getWidth(),  //bot-right.x
-                drawCommand.getY()                            //bot-right.y
-        };
-        final float[] DST_V = new float[SRC_V.length];
-        drawCommand.getTransform().transform(SRC_V, 0, DST_V, 0,
-                DST_V.length / 2);
-
-                     //First triangle
-        this.vertices.put(DST_V[2]).put(DST_V[3]) //top-left.xy
-                     .put(MIN_U).put(MAX_V)       //top-left.uv
-                     .put(DST_V[4]).put(DST_V[5]) //top-right.xy
-                     .put(MAX_U).put(MAX_V)       //top-right.uv
-                     .put(DST_V[0]).put(DST_V[1]) //bot-left.xy
-                     .put(MIN_U).put(MIN_V)       //bot-left.uv
-                     //Second triangle
-                     .put(DST_V[4]).put(DST_V[5]) //top-right.xy
-                     .put(MAX_U).put(MAX_V)       //top-right.uv
-                     .put(DST_V[0]).put(DST_V[1]) //bot-left.xy
-                     .put(MIN_U).put(MIN_V)       //bot-left.uv
-                     .put(DST_V[6]).put(DST_V[7]) //bot-right.xy
-                     .put(MAX_U).put(MIN_V);      //bot-right.uv
-
-        this.currentTexture = PIXMAP.getTexture();
-        ++this.size;
+        sprites.transform();
+        for (int i = 0; i < sprites.size(); ++i) {
+            sprites.toQuad(this.QUAD, 0, i);
+            this.enqueue(sprites.textureAt(i), Material.DEFAULT, this.QUAD, 0,
+                         0, this.DEFAULT_EXTRAS);
+        }//end for
     }
 
     public void flush() {
-        if (this.isEmpty()) {
-            return;
+        this.ensureOpen();
+        if (FrameCapture.isRecording()) {
+            FrameCapture.recordFlush(this);
         }//end if
+        this.flush(RenderStatistics.FlushCause.EXPLICIT);
+    }
 
-        this.CANVAS.setup(this.CANVAS_FRAMEBUFFER_ID);
-        this.currentTexture.bind();
-
-        this.vertices.flip();
-        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, this.BUFFER_OBJECT_ID);
-        GL15.glBufferData(GL_ARRAY_BUFFER, this.vertices, GL_STATIC_DRAW);
+    private void flush(RenderStatistics.FlushCause cause) {
+        //The opaque quads first, so that they hide what is behind them
+        if (this.opaqueQueue != null) {
+            this.emit(this.opaqueQueue, true);
+        }//end if
 
-        this.SHADER.setUniformMatrix("transformMatrix", this.getCombined());
-        this.SHADER.use();
-        GL11.glDrawArrays(GL11.GL_TRIANGLES, 0,
-                          this.size() * BatchRenderer.VERTICES_PER_QUAD);
+        if (this.deferredQueue != null) {
+            this.emit(this.deferredQueue, false);
+        }//end if
 
-        this.clear();
+        this.draw(cause);
+        //Even if everything was culled, the canvas or TRANSFORM may have
+        //changed since the view was computed
+        this.viewStale = true;
     }
 
     @Override
@@ -378,33 +854,104 @@ public class BatchRenderer extends PixmapRenderer implements AutoCloseable {
         return this.CANVAS;
     }
 
+    //The quads of the current batch, in [0, capacity()]. The deferred quads
+    //are counted by deferredSize().
     public int size() {
         this.ensureOpen();
         return this.size;
     }
 
+    //The quads waiting to be sorted on the next flush, 0 unless deferred. They
+    //don't take the space of the batch, which they are written to by flush().
+    public int deferredSize() {
+        this.ensureOpen();
+        int size = 0;
+        if (this.deferredQueue != null) {
+            size += this.deferredQueue.size();
+        }//end if
+
+        if (this.opaqueQueue != null) {
+            size += this.opaqueQueue.size();
+        }//end if
+
+        return size;
+    }
+
     public int capacity() {
         this.ensureOpen();
-        return this.vertices.capacity() / BatchRenderer.FLOATS_PER_QUAD;
+        return this.CAPACITY;
     }
 
+    //The number of texture units this BatchRenderer draws from
+    public int textureSlots() {
+        this.ensureOpen();
+        return this.textures.length;
+    }
+
+    //Of the current batch
     public int space() {
         return this.capacity() - this.size();
     }
 
+    //Neither a quad in the batch nor a deferred one
     public boolean isEmpty() {
-        return this.size() == 0;
+        return this.size() == 0 && this.deferredSize() == 0;
     }
 
+    //Of the current batch, a deferred BatchRenderer accepts quads regardless
     public boolean isFull() {
         return this.space() == 0;
     }
 
+    public boolean isDeferred() {
+        this.ensureOpen();
+        return this.deferredQueue != null;
+    }
+
+    public boolean isDepthTested() {
+        this.ensureOpen();
+        return this.DEPTH_TESTED;
+    }
+
+    public boolean isColored() {
+        this.ensureOpen();
+        return this.COLORED;
+    }
+
+    public boolean isCulling() {
+        this.ensureOpen();
+        return this.CULLING;
+    }
+
+    //The number of quads dropped by culling, since the last resetCounters()
+    public long culledCount() {
+        this.ensureOpen();
+        return this.culledCount;
+    }
+
+    //The number of quads that made it into a batch, since the last
+    //resetCounters()
+    public long emittedCount() {
+        this.ensureOpen();
+        return this.emittedCount;
+    }
+
+    public void resetCounters() {
+        this.ensureOpen();
+        this.culledCount = 0L;
+        this.emittedCount = 0L;
+    }
+
     public void clear() {
         this.ensureOpen();
-        this.vertices.clear();
-        this.size = 0;
-        this.currentTexture = null;
+        if (this.deferredQueue != null) {
+            this.deferredQueue.clear();
+        }//end if
+
+        if (this.opaqueQueue != null) {
+            this.opaqueQueue.clear();
+        }//end if
+        this.clearVertices();
     }
 
     public boolean isClosed() {
@@ -418,12 +965,27 @@ public class BatchRenderer extends PixmapRenderer implements AutoCloseable {
         }//end if
 
         this.dispenser.accept(this.vertices);
-        GL30.glDeleteFramebuffers(this.CANVAS_FRAMEBUFFER_ID);
-        GL20.glDeleteBuffers(this.BUFFER_OBJECT_ID);
+        RenderState.deleteFramebuffer(this.CANVAS_FRAMEBUFFER_ID);
+        if (this.stream != null) {
+            this.stream.close();
+        } else {
+            RenderState.deleteBuffer(this.BUFFER_OBJECT_ID);
+        }//end if
 
         this.closed = true;
     }
 
+    //Of a deferred BatchRenderer
+    boolean isStable() {
+        this.ensureOpen();
+        return this.deferredQueue != null && this.deferredQueue.isStable();
+    }
+
+    AffineTransform getTransform() {
+        this.ensureOpen();
+        return new AffineTransform(this.TRANSFORM);
+    }
+
     @Override
     void setupCanvas() {
         this.getCanvas().setup(BatchRenderer.this.CANVAS_FRAMEBUFFER_ID);
@@ -434,20 +996,372 @@ public class BatchRenderer extends PixmapRenderer implements AutoCloseable {
         this.getCanvas().copyTo(destination, this.CANVAS_FRAMEBUFFER_ID);
     }
 
-    private AffineTransform getCombined() {
-        final int CANVAS_WIDTH = this.CANVAS.getWidth();
-        final int CANVAS_HEIGHT = this.CANVAS.getHeight();
-        //The canvas offset must not be taken into account, as it is effectively
-        //calculated through glViewport
-        final double CENTER_X = CANVAS_WIDTH / 2.0;
-        final double CENTER_Y = CANVAS_HEIGHT / 2.0;
+    //Culls, defers or writes a quad given in the DeferredQueue record format,
+    //with extras in the format of DEFAULT_EXTRAS. Package-private for
+    //FrameReplay.
+    void enqueue(Texture texture, Material material, float[] quad,
+                 int offset, int layer, float[] extras) {
+        //Immediate quads need it too, for their depth
+        if (layer < DeferredQueue.MIN_LAYER ||
+            layer > DeferredQueue.MAX_LAYER) {
+            throw new IllegalArgumentException("Argument layer must be in " +
+                    "[%d, %d].".formatted(DeferredQueue.MIN_LAYER,
+                                          DeferredQueue.MAX_LAYER));
+        }//end if
+
+        if (FrameCapture.isRecording()) {
+            FrameCapture.recordQuad(this, texture, material, quad, offset,
+                                    layer, this.COLORED ?
+                                    BatchRenderer.tintOf(extras, 0) :
+                                    BatchRenderer.OPAQUE_WHITE);
+        }//end if
+        RenderStatistics.countQuads(1);
+        if (this.CULLING && !this.isInView(quad, offset)) {
+            ++this.culledCount;
+            return;
+        }//end if
+        ++this.emittedCount;
+
+        if (this.deferredQueue != null) {
+            final boolean OPAQUE = this.opaqueQueue != null &&
+                                   Material.Blend.OPAQUE == material.getBlend();
+            final DeferredQueue QUEUE = OPAQUE ? this.opaqueQueue :
+                                                 this.deferredQueue;
+            if (QUEUE.isFull()) {
+                this.flush(RenderStatistics.FlushCause.BUFFER_FULL);
+            }//end if
+
+            //Inverted, the nearest layer is sorted first
+            QUEUE.add(texture, material, OPAQUE ? -1 - layer : layer, quad,
+                      offset, extras, 0);
+            return;
+        }//end if
+
+        this.put(texture, material, layer, quad, offset, extras, 0);
+    }
+
+    //Sorts and writes the quads of queue, then clears it. inverted if the
+    //layers were added as -1 - layer.
+    private void emit(DeferredQueue queue, boolean inverted) {
+        if (queue.isEmpty()) {
+            return;
+        }//end if
+
+        queue.sort();
+        final float[] DATA = queue.data();
+        for (int i = 0; i < queue.size(); ++i) {
+            final int RECORD = queue.recordAt(i);
+            final int OFFSET = queue.offsetOf(RECORD);
+            final int LAYER = inverted ? -1 - queue.layerAt(i) :
+                                         queue.layerAt(i);
+            this.put(queue.textureOf(RECORD), queue.materialOf(RECORD), LAYER,
+                     DATA, OFFSET, DATA,
+                     OFFSET + DeferredQueue.FLOATS_PER_RECORD);
+        }//end for
+        queue.clear();
+    }
+
+    //Writes a quad given in the DeferredQueue record format, drawing the
+    //vertices written so far if there is no space or texture slot left, or if
+    //they are of another Material
+    private void put(Texture texture, Material material, int layer,
+                     float[] quad, int offset, float[] extras,
+                     int extrasOffset) {
+        if (material != this.material) {
+            this.draw(RenderStatistics.FlushCause.MATERIAL_SWITCH);
+            this.material = material;
+        }//end if
+
+        int slot = this.slotOf(texture);
+        if (this.size == this.CAPACITY) {
+            this.draw(RenderStatistics.FlushCause.BUFFER_FULL);
+            slot = -1;
+        } else if (-1 == slot && this.textureCount == this.textures.length) {
+            this.draw(RenderStatistics.FlushCause.TEXTURE_SWITCH);
+        }//end if
+
+        if (-1 == slot) {
+            slot = this.textureCount++;
+            this.textures[slot] = texture;
+        }//end if
+        this.lastSlot = slot;
+
+        final float MIN_U = quad[offset + 8];
+        final float MIN_V = quad[offset + 9];
+        final float MAX_U = quad[offset + 10];
+        final float MAX_V = quad[offset + 11];
+        //The components in memory order, i.e. red first
+        final int COLOR = !this.COLORED ? 0 :
+                this.vertices.order() == ByteOrder.BIG_ENDIAN ?
+                BatchRenderer.tintOf(extras, extrasOffset) :
+                Integer.reverseBytes(BatchRenderer.tintOf(extras,
+                                                          extrasOffset));
+        final float DEPTH = BatchRenderer.depthOf(layer);
+
+        //In the order of QuadIndexBuffer
+        //top-left
+        this.putVertex(quad[offset + 2], quad[offset + 3], MIN_U, MAX_V, slot,
+                       COLOR, extras, extrasOffset, DEPTH);
+        //top-right
+        this.putVertex(quad[offset + 4], quad[offset + 5], MAX_U, MAX_V, slot,
+                       COLOR, extras, extrasOffset, DEPTH);
+        //bot-left
+        this.putVertex(quad[offset], quad[offset + 1], MIN_U, MIN_V, slot,
+                       COLOR, extras, extrasOffset, DEPTH);
+        //bot-right
+        this.putVertex(quad[offset + 6], quad[offset + 7], MAX_U, MIN_V, slot,
+                       COLOR, extras, extrasOffset, DEPTH);
+
+        ++this.size;
+    }
+
+    //Draws the vertices written so far, cause being why they couldn't be
+    //written to any further
+    private void draw(RenderStatistics.FlushCause cause) {
+        if (0 == this.size) {
+            return;
+        }//end if
+        RenderStatistics.countFlush(cause);
+        RenderStatistics.countDrawCall();
+
+        GpuTimer.begin("BatchRenderer.draw");
+        try {
+            this.drawBatch();
+        } finally {
+            GpuTimer.end();
+        }
+    }
+
+    private void drawBatch() {
+        this.CANVAS.setup(this.CANVAS_FRAMEBUFFER_ID);
+        for (int i = 0; i < this.textureCount; ++i) {
+            RenderState.bindTexture(i, this.textures[i].getId());
+        }//end for
+        RenderState.activeTexture(0);
+
+        this.vertices.flip();
+        RenderStatistics.countUpload(this.vertices.remaining());
+        final int OFFSET;
+        if (null == this.stream) {
+            RenderState.bindArrayBuffer(this.BUFFER_OBJECT_ID);
+            GL15.glBufferData(GL_ARRAY_BUFFER, this.vertices, GL_STATIC_DRAW);
+            OFFSET = 0;
+        } else {
+            OFFSET = this.stream.upload(this.vertices);
+            RenderState.bindArrayBuffer(this.BUFFER_OBJECT_ID);
+        }//end if
+
+        final ShaderProgram SHADER = this.shaderOf(this.material);
+        try {
+            this.material.apply(SHADER);
+            SHADER.setUniformMatrix("transformMatrix",
+                    PixmapRenderer.getCombined(this.CANVAS, this.TRANSFORM));
+            if (this.textures.length > 1) {
+                SHADER.setUniformArray("samplers", this.SAMPLER_UNITS);
+            }//end if
+            if (this.DEPTH_TESTED) {
+                RenderState.enableDepthTest();
+                RenderState.depthFunc(GL11.GL_LEQUAL);
+                //Translucent quads must not hide what is drawn behind them
+                //later
+                RenderState.depthMask(Material.Blend.OPAQUE ==
+                                      this.material.getBlend());
+            }//end if
+            SHADER.use(this.LAYOUT);
+            QuadIndexBuffer.shared().bind(this.size);
+            GL32.glDrawElementsBaseVertex(GL11.GL_TRIANGLES,
+                    this.size * QuadIndexBuffer.INDICES_PER_QUAD,
+                    QuadIndexBuffer.INDEX_TYPE, 0,
+                    OFFSET / this.LAYOUT.getStride());
+        } finally {
+            //The other renderers expect the blend mode of Material.DEFAULT,
+            //no depth test, and the uniform variables as they were set on
+            //SHADER
+            this.material.restore(SHADER);
+            Material.DEFAULT.getBlend().apply();
+            if (this.DEPTH_TESTED) {
+                RenderState.disableDepthTest();
+            }//end if
+        }
+
+        if (this.stream != null) {
+            this.stream.fence();
+            if (this.stream.isPersistent()) {
+                this.vertices = this.stream.region();
+            }//end if
+        }//end if
+
+        this.clearVertices();
+    }
+
+    private void clearVertices() {
+        this.vertices.clear();
+        this.size = 0;
+        this.viewStale = true;
+        for (int i = 0; i < this.textureCount; ++i) {
+            this.textures[i] = null;
+        }//end for
+        this.textureCount = 0;
+        this.lastSlot = 0;
+    }
+
+    //If the bounds of quad, in the DeferredQueue record format, intersect the
+    //canvas
+    private boolean isInView(float[] quad, int offset) {
+        if (this.viewStale) {
+            this.refreshView();
+        }//end if
+
+        float minX = quad[offset];
+        float minY = quad[offset + 1];
+        float maxX = minX;
+        float maxY = minY;
+        for (int i = offset + 2; i < offset + 8; i += 2) {
+            minX = Math.min(minX, quad[i]);
+            maxX = Math.max(maxX, quad[i]);
+            minY = Math.min(minY, quad[i + 1]);
+            maxY = Math.max(maxY, quad[i + 1]);
+        }//end for
+
+        return maxX >= this.VIEW[8] && minX <= this.VIEW[10] &&
+               maxY >= this.VIEW[9] && minY <= this.VIEW[11];
+    }
+
+    private void refreshView() {
+        final double[] VIEW = this.VIEW;
+        final double WIDTH = this.CANVAS.getWidth();
+        final double HEIGHT = this.CANVAS.getHeight();
+        VIEW[0] = 0.0;
+        VIEW[1] = 0.0;
+        VIEW[2] = 0.0;
+        VIEW[3] = HEIGHT;
+        VIEW[4] = WIDTH;
+        VIEW[5] = HEIGHT;
+        VIEW[6] = WIDTH;
+        VIEW[7] = 0.0;
+        try {
+            this.TRANSFORM.inverseTransform(VIEW, 0, VIEW, 0, 4);
+        } catch (NoninvertibleTransformException e) {
+            //Everything collapses to a line or a point, nothing is visible
+            VIEW[8] = VIEW[9] = Double.POSITIVE_INFINITY;
+            VIEW[10] = VIEW[11] = Double.NEGATIVE_INFINITY;
+            this.viewStale = false;
+            return;
+        }
+
+        VIEW[8] = Math.min(Math.min(VIEW[0], VIEW[2]), Math.min(VIEW[4],
+                                                                VIEW[6]));
+        VIEW[9] = Math.min(Math.min(VIEW[1], VIEW[3]), Math.min(VIEW[5],
+                                                                VIEW[7]));
+        VIEW[10] = Math.max(Math.max(VIEW[0], VIEW[2]), Math.max(VIEW[4],
+                                                                 VIEW[6]));
+        VIEW[11] = Math.max(Math.max(VIEW[1], VIEW[3]), Math.max(VIEW[5],
+                                                                 VIEW[7]));
+        this.viewStale = false;
+    }
+
+    //-1 if texture is not bound to any slot
+    private int slotOf(Texture texture) {
+        if (this.lastSlot < this.textureCount &&
+            texture.equals(this.textures[this.lastSlot])) {
+            return this.lastSlot;
+        }//end if
+
+        for (int i = 0; i < this.textureCount; ++i) {
+            if (texture.equals(this.textures[i])) {
+                return i;
+            }//end if
+        }//end for
+
+        return -1;
+    }
+
+    //In the order of LAYOUT
+    private void putVertex(float x, float y, float u, float v, int slot,
+                           int color, float[] extras, int extrasOffset,
+                           float depth) {
+        if (this.HALF_FLOAT_POSITIONS) {
+            this.vertices.putShort(VertexLayout.toHalfFloat(x))
+                         .putShort(VertexLayout.toHalfFloat(y));
+        } else {
+            this.vertices.putFloat(x).putFloat(y);
+        }//end if
+
+        if (this.PACKED_TEX_COORDS) {
+            this.vertices.putShort(BatchRenderer.toUnsignedNormalized(u))
+                         .putShort(BatchRenderer.toUnsignedNormalized(v));
+        } else {
+            this.vertices.putFloat(u).putFloat(v);
+        }//end if
+
+        if (this.COLORED) {
+            this.vertices.putInt(color);
+        }//end if
+
+        for (int i = this.COLORED ? BatchRenderer.TINT_FLOATS : 0;
+             i < this.EXTRA_FLOATS; ++i) {
+            this.vertices.putFloat(extras[extrasOffset + i]);
+        }//end for
+
+        if (this.DEPTH_TESTED) {
+            this.vertices.putFloat(depth);
+        }//end if
+
+        if (this.textures.length > 1) {
+            this.vertices.putFloat(slot);
+        }//end if
+    }
+
+    //The ShaderProgram of the quads of material. A custom one must declare the
+    //attributes of LAYOUT it reads, like the one of the Builder.
+    private ShaderProgram shaderOf(Material material) {
+        return null == material.getShader() ? this.SHADER :
+               BatchRenderer.resolveShader(material.getShader(),
+                                           this.textures.length, this.COLORED);
+    }
+
+    //The z of the quads of layer, in clip space, from 1 for MIN_LAYER, the
+    //farthest, down to about -1 for MAX_LAYER
+    private static float depthOf(int layer) {
+        return -(float) layer / -DeferredQueue.MIN_LAYER;
+    }
+
+    //Packed as 0xRRGGBBAA, from the first TINT_FLOATS floats at offset
+    private static int tintOf(float[] extras, int offset) {
+        return (int) extras[offset] << 16 | (int) extras[offset + 1];
+    }
+
+    //value clamped to [0, 1] as a normalized unsigned byte
+    private static int toUnsignedByte(float value) {
+        final float CLAMPED = Math.min(Math.max(value, 0.0f), 1.0f);
+        return Math.round(CLAMPED * 0xFF);
+    }
+
+    //The index of the custom attribute name
+    private int attributeIndexOf(String name) {
+        for (int i = 0; i < this.ATTRIBUTE_NAMES.length; ++i) {
+            if (this.ATTRIBUTE_NAMES[i].equals(name)) {
+                return i;
+            }//end if
+        }//end for
+
+        throw new IllegalArgumentException("Argument name is not an " +
+                "attribute of this BatchRenderer.");
+    }
+
+    //value in [0, 1] as the bits of a normalized unsigned short
+    private static short toUnsignedNormalized(float value) {
+        final float CLAMPED = Math.min(Math.max(value, 0.0f), 1.0f);
+        return (short) Math.round(CLAMPED * BatchRenderer.MAX_UNSIGNED_SHORT);
+    }
 
-        AffineTransform combined = AffineTransform.getScaleInstance(2.0 /
-                CANVAS_WIDTH, 2.0 / CANVAS_HEIGHT);
-        combined.translate(-CENTER_X, -CENTER_Y);
-        combined.concatenate(this.TRANSFORM);
+    private static int[] samplerUnits(int textureSlots) {
+        final int[] UNITS = new int[textureSlots];
+        for (int i = 0; i < UNITS.length; ++i) {
+            UNITS[i] = i;
+        }//end for
 
-        return combined;
+        return UNITS;
     }
 
     private void ensureOpen() throws IllegalStateException {
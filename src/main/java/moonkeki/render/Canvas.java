@@ -1,7 +1,6 @@
 package moonkeki.render;
 
 import org.lwjgl.opengl.GL11;
-import org.lwjgl.opengl.GL30;
 
 import java.awt.*;
 
@@ -122,6 +121,9 @@ public abstract class Canvas {
         @Override
         void clear(Color color, int framebufferId) {}
 
+        @Override
+        void clearDepth(int framebufferId) {}
+
         @Override
         void copyTo(Pixmap destination, int sourceFramebufferId) {
             if (destination.getWidth() != 0 || destination.getHeight() != 0) {
@@ -181,9 +183,27 @@ public abstract class Canvas {
      * @param color The new texel color of this {@link Canvas}.
      */
     public void clear(Color color) {
-        final int CANVAS_FRAMEBUFFER_ID = GL30.glGenFramebuffers();
+        if (FrameCapture.isRecording()) {
+            FrameCapture.recordClear(this, color);
+        }//end if
+        final int CANVAS_FRAMEBUFFER_ID = RenderState.genFramebuffer();
         this.clear(color, CANVAS_FRAMEBUFFER_ID);
-        GL30.glDeleteFramebuffers(CANVAS_FRAMEBUFFER_ID);
+        RenderState.deleteFramebuffer(CANVAS_FRAMEBUFFER_ID);
+    }
+
+    /**
+     * Resets the depth of every texel of this {@link Canvas} to the farthest,
+     * for a depth tested {@link BatchRenderer}. The window has a depth buffer,
+     * while a {@link Texture} has one only after {@link
+     * Texture#attachDepthBuffer()}.
+     */
+    public void clearDepth() {
+        if (FrameCapture.isRecording()) {
+            FrameCapture.recordClearDepth(this);
+        }//end if
+        final int CANVAS_FRAMEBUFFER_ID = RenderState.genFramebuffer();
+        this.clearDepth(CANVAS_FRAMEBUFFER_ID);
+        RenderState.deleteFramebuffer(CANVAS_FRAMEBUFFER_ID);
     }
 
     /**
@@ -204,12 +224,12 @@ public abstract class Canvas {
 
     void setup(int framebufferId) {
         final Size SIZE = this.getSize();
-        GL11.glViewport(this.getXOffset(), this.getYOffset(),
-                        SIZE.width, SIZE.height);
-        GL11.glEnable(GL11.GL_SCISSOR_TEST);
-        GL11.glScissor(this.getXOffset(), this.getYOffset(),
-                       SIZE.width, SIZE.height);
-        GL30.glBindFramebuffer(GL30.GL_FRAMEBUFFER, framebufferId);
+        RenderState.viewport(this.getXOffset(), this.getYOffset(),
+                             SIZE.width, SIZE.height);
+        RenderState.enableScissorTest();
+        RenderState.scissor(this.getXOffset(), this.getYOffset(),
+                            SIZE.width, SIZE.height);
+        RenderState.bindFramebuffer(framebufferId);
     }
 
     void clear(Color color, int framebufferId) {
@@ -221,6 +241,14 @@ public abstract class Canvas {
         GL11.glClear(GL11.GL_COLOR_BUFFER_BIT);
     }
 
+    void clearDepth(int framebufferId) {
+        this.setup(framebufferId);
+        //glClear respects the depth mask
+        RenderState.depthMask(true);
+        GL11.glClearDepth(1.0);
+        GL11.glClear(GL11.GL_DEPTH_BUFFER_BIT);
+    }
+
     /**
      * Gets the width of this {@link Canvas} in texels.
      * @return The width of this {@link Canvas} in texels.
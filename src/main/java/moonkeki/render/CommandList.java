@@ -0,0 +1,160 @@
+package moonkeki.render;
+
+import java.awt.geom.AffineTransform;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Quads recorded off the GL thread, to be submitted to a {@link BatchRenderer}
+ * with {@link BatchRenderer#submit(CommandList...)}. Recording does the vertex
+ * generation, i.e. transforming the corners and picking the texture
+ * coordinates, and makes no OpenGL call, so several CommandLists can be
+ * recorded in parallel, one per thread.
+ *
+ * <p>A CommandList is not thread-safe, and must not be recorded into while it
+ * is being submitted. Its arena is kept on {@link #clear()}, so a CommandList
+ * that is reused every frame stops allocating once it has grown to the peak
+ * number of quads.
+ */
+public final class CommandList {
+
+    @FunctionalInterface
+    public interface RangeRecorder {
+        //Records the elements [from, to) into commandList
+        void record(CommandList commandList, int from, int to);
+    }
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private float[] data = new float[CommandList.INITIAL_CAPACITY *
+                                     DeferredQueue.FLOATS_PER_RECORD];
+    private Texture[] textures = new Texture[CommandList.INITIAL_CAPACITY];
+    private short[] layers = new short[CommandList.INITIAL_CAPACITY];
+    private int size;
+
+    /**
+     * Splits [0, size) into commandLists.length contiguous ranges, and records
+     * the i-th range into the i-th CommandList, in parallel on the common
+     * ForkJoinPool. The CommandLists are cleared first. As every range always
+     * goes to the same CommandList, submitting the CommandLists in order draws
+     * the elements in order, regardless of the scheduling.
+     */
+    public static void recordInParallel(CommandList[] commandLists, int size,
+                                        RangeRecorder recorder) {
+        if (0 == commandLists.length) {
+            throw new IllegalArgumentException("Argument array commandLists " +
+                    "can't have a length of 0.");
+        }//end if
+
+        if (size < 0) {
+            throw new IllegalArgumentException("Argument size can't be " +
+                    "negative.");
+        }//end if
+
+        final int COUNT = commandLists.length;
+        IntStream.range(0, COUNT).parallel().forEach(i -> {
+            final int FROM = (int) ((long) size * i / COUNT);
+            final int TO = (int) ((long) size * (i + 1) / COUNT);
+            commandLists[i].clear();
+            recorder.record(commandLists[i], FROM, TO);
+        });
+    }
+
+    public void add(PixmapRenderer.DrawCommand drawCommand) {
+        final AffineTransform T = PixmapRenderer.transformOf(drawCommand);
+        final int FLAGS = (drawCommand.isXMirrored() ?
+                           BatchRenderer.MIRRORED_X : 0) |
+                          (drawCommand.isYMirrored() ?
+                           BatchRenderer.MIRRORED_Y : 0);
+        this.add(drawCommand.getPixmap(),
+                 drawCommand.getX(), drawCommand.getY(),
+                 drawCommand.getWidth(), drawCommand.getHeight(),
+                 T.getScaleX(), T.getShearY(),
+                 T.getShearX(), T.getScaleY(),
+                 T.getTranslateX(), T.getTranslateY(),
+                 FLAGS, drawCommand.getLayer());
+    }
+
+    //The arguments are the same as those of BatchRenderer.queue
+    public void add(Pixmap pixmap, double x, double y,
+                    double width, double height,
+                    double m00, double m10, double m01, double m11,
+                    double m02, double m12, int flags, int layer) {
+        if (width < 0.0) {
+            throw new IllegalArgumentException("Argument width can't be " +
+                    "negative.");
+        }//end if
+
+        if (height < 0.0) {
+            throw new IllegalArgumentException("Argument height can't be " +
+                    "negative.");
+        }//end if
+
+        if (layer < DeferredQueue.MIN_LAYER || layer > DeferredQueue.MAX_LAYER) {
+            throw new IllegalArgumentException("Argument layer must be in " +
+                    "[%d, %d].".formatted(DeferredQueue.MIN_LAYER,
+                                          DeferredQueue.MAX_LAYER));
+        }//end if
+
+        if (pixmap.isVoid() || 0.0 == width || 0.0 == height) {
+            return;
+        }//end if
+
+        this.ensureCapacity(this.size + 1);
+        PixmapRenderer.toQuad(this.data, this.offsetOf(this.size), pixmap,
+                              x, y, width, height,
+                              m00, m10, m01, m11, m02, m12,
+                              (flags & BatchRenderer.MIRRORED_X) != 0,
+                              (flags & BatchRenderer.MIRRORED_Y) != 0);
+        this.textures[this.size] = pixmap.getTexture();
+        this.layers[this.size] = (short) layer;
+        ++this.size;
+    }
+
+    //The number of quads
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return 0 == this.size;
+    }
+
+    public void clear() {
+        Arrays.fill(this.textures, 0, this.size, null);
+        this.size = 0;
+    }
+
+    //The quad i starts from offsetOf(i), in the DeferredQueue record format
+    float[] data() {
+        return this.data;
+    }
+
+    int offsetOf(int i) {
+        return i * DeferredQueue.FLOATS_PER_RECORD;
+    }
+
+    Texture textureAt(int i) {
+        return this.textures[i];
+    }
+
+    int layerAt(int i) {
+        return this.layers[i];
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= this.textures.length) {
+            return;
+        }//end if
+
+        final int NEW_CAPACITY = Math.max(capacity,
+                (int) Math.min(Integer.MAX_VALUE /
+                               DeferredQueue.FLOATS_PER_RECORD,
+                               2L * this.textures.length));
+        this.data = Arrays.copyOf(this.data, Math.multiplyExact(NEW_CAPACITY,
+                DeferredQueue.FLOATS_PER_RECORD));
+        this.textures = Arrays.copyOf(this.textures, NEW_CAPACITY);
+        this.layers = Arrays.copyOf(this.layers, NEW_CAPACITY);
+    }
+
+}
@@ -0,0 +1,236 @@
+package moonkeki.render;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Records quads to be drawn later, each with a sort key of (layer, material,
+ * texture, sequence). On {@link #sort()} the records are ordered by their keys,
+ * so quads of the same layer that share a material and texture end up next to
+ * each other, which minimizes the draw calls needed to emit them.
+ *
+ * <p>A stable {@link DeferredQueue} sorts by (layer, sequence) only, i.e. it
+ * keeps the submission order within a layer.
+ *
+ * <p>The keys are sorted with an LSD radix sort, that reuses its buffers, so
+ * once the buffers have grown to the peak number of records, sorting doesn't
+ * allocate. Recording still does, once per distinct {@link Texture} and
+ * {@link Material} after every {@link #clear()}, to map them to their
+ * ordinals in the keys.
+ */
+final class DeferredQueue {
+
+    //Per record: 4 corners (bot-left, top-left, top-right, bot-right) as x, y
+    //followed by minU, minV, maxU, maxV, and then by the extra floats of the
+    //DeferredQueue, if any
+    static final int FLOATS_PER_RECORD = 12;
+    static final int MIN_LAYER = Short.MIN_VALUE;
+    static final int MAX_LAYER = Short.MAX_VALUE;
+    //The number of records after which the sequence bits would overflow
+    static final int MAX_SIZE = 1 << 24;
+
+    private static final int INITIAL_CAPACITY = 256;
+    private static final int LAYER_SHIFT = 48;
+    private static final int MATERIAL_SHIFT = 40;
+    private static final int TEXTURE_SHIFT = 24;
+    private static final long SEQUENCE_MASK = (1L << 24) - 1;
+    private static final int MATERIAL_MASK = 0xFF;
+    private static final int TEXTURE_MASK = 0xFFFF;
+
+    private final boolean STABLE;
+    private final int EXTRA_FLOATS;
+    private final int RECORD_FLOATS;
+    private final int[] COUNTS = new int[256];
+    private final Map<Texture, Integer> TEXTURE_ORDINALS = new HashMap<>();
+    private final Map<Material, Integer> MATERIAL_ORDINALS = new HashMap<>();
+    private float[] data;
+    private Texture[] textures = new Texture[DeferredQueue.INITIAL_CAPACITY];
+    private Material[] materials = new Material[
+            DeferredQueue.INITIAL_CAPACITY];
+    private long[] keys = new long[DeferredQueue.INITIAL_CAPACITY];
+    private long[] scratch = new long[DeferredQueue.INITIAL_CAPACITY];
+    private int size;
+
+    DeferredQueue(boolean stable) {
+        this(stable, 0);
+    }
+
+    //Every record carries extraFloats floats after the quad, e.g. per-vertex
+    //attributes
+    DeferredQueue(boolean stable, int extraFloats) {
+        if (extraFloats < 0) {
+            throw new IllegalArgumentException("Argument extraFloats can't " +
+                    "be negative.");
+        }//end if
+
+        this.STABLE = stable;
+        this.EXTRA_FLOATS = extraFloats;
+        this.RECORD_FLOATS = DeferredQueue.FLOATS_PER_RECORD + extraFloats;
+        this.data = new float[DeferredQueue.INITIAL_CAPACITY *
+                              this.RECORD_FLOATS];
+    }
+
+    //record holds FLOATS_PER_RECORD floats, starting from offset. Only for a
+    //DeferredQueue without extra floats.
+    void add(Texture texture, int layer, float[] record, int offset) {
+        this.add(texture, Material.DEFAULT, layer, record, offset, null, 0);
+    }
+
+    //extras holds the extra floats, starting from extrasOffset
+    void add(Texture texture, Material material, int layer, float[] record,
+             int offset, float[] extras, int extrasOffset) {
+        if (layer < DeferredQueue.MIN_LAYER || layer > DeferredQueue.MAX_LAYER) {
+            throw new IllegalArgumentException("Argument layer must be in " +
+                    "[%d, %d].".formatted(DeferredQueue.MIN_LAYER,
+                                          DeferredQueue.MAX_LAYER));
+        }//end if
+
+        if (this.isFull()) {
+            throw new IllegalStateException("This DeferredQueue is full.");
+        }//end if
+
+        this.ensureCapacity(this.size + 1);
+        final int INDEX = this.size++;
+        final int DATA_OFFSET = this.offsetOf(INDEX);
+        System.arraycopy(record, offset, this.data, DATA_OFFSET,
+                         DeferredQueue.FLOATS_PER_RECORD);
+        if (this.EXTRA_FLOATS > 0) {
+            System.arraycopy(extras, extrasOffset, this.data,
+                             DATA_OFFSET + DeferredQueue.FLOATS_PER_RECORD,
+                             this.EXTRA_FLOATS);
+        }//end if
+        this.textures[INDEX] = texture;
+        this.materials[INDEX] = material;
+
+        long key = (long) (layer - DeferredQueue.MIN_LAYER) <<
+                   DeferredQueue.LAYER_SHIFT;
+        if (!this.STABLE) {
+            key |= (long) DeferredQueue.ordinalOf(this.MATERIAL_ORDINALS,
+                    material, DeferredQueue.MATERIAL_MASK) <<
+                   DeferredQueue.MATERIAL_SHIFT;
+            key |= (long) DeferredQueue.ordinalOf(this.TEXTURE_ORDINALS,
+                    texture, DeferredQueue.TEXTURE_MASK) <<
+                   DeferredQueue.TEXTURE_SHIFT;
+        }//end if
+        this.keys[INDEX] = key | INDEX;
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    boolean isEmpty() {
+        return 0 == this.size;
+    }
+
+    boolean isFull() {
+        return DeferredQueue.MAX_SIZE == this.size;
+    }
+
+    boolean isStable() {
+        return this.STABLE;
+    }
+
+    void sort() {
+        for (int shift = 0; shift < Long.SIZE; shift += Byte.SIZE) {
+            this.sortByByte(shift);
+        }//end for
+    }
+
+    //The record of the i-th key, valid after sort()
+    int recordAt(int i) {
+        return (int) (this.keys[i] & DeferredQueue.SEQUENCE_MASK);
+    }
+
+    //The layer of the i-th key, valid after sort()
+    int layerAt(int i) {
+        return (int) (this.keys[i] >>> DeferredQueue.LAYER_SHIFT) +
+               DeferredQueue.MIN_LAYER;
+    }
+
+    Texture textureOf(int record) {
+        return this.textures[record];
+    }
+
+    Material materialOf(int record) {
+        return this.materials[record];
+    }
+
+    //The record starts from offsetOf(record)
+    float[] data() {
+        return this.data;
+    }
+
+    int offsetOf(int record) {
+        return record * this.RECORD_FLOATS;
+    }
+
+    void clear() {
+        Arrays.fill(this.textures, 0, this.size, null);
+        Arrays.fill(this.materials, 0, this.size, null);
+        this.TEXTURE_ORDINALS.clear();
+        this.MATERIAL_ORDINALS.clear();
+        this.size = 0;
+    }
+
+    private static <T> int ordinalOf(Map<T, Integer> ordinals, T t,
+                                     int maxOrdinal) {
+        final Integer ORDINAL = ordinals.get(t);
+        if (ORDINAL != null) {
+            return ORDINAL;
+        }//end if
+
+        //Once the ordinals run out, the rest share the last one, they are just
+        //not grouped with each other
+        final int NEW_ORDINAL = Math.min(ordinals.size(), maxOrdinal);
+        ordinals.put(t, NEW_ORDINAL);
+        return NEW_ORDINAL;
+    }
+
+    //One counting sort pass over a byte of the keys
+    private void sortByByte(int shift) {
+        final int[] COUNTS = this.COUNTS;
+        Arrays.fill(COUNTS, 0);
+        for (int i = 0; i < this.size; ++i) {
+            ++COUNTS[(int) (this.keys[i] >>> shift) & 0xFF];
+        }//end for
+
+        //All the keys have the same byte, the pass wouldn't change the order
+        if (COUNTS[(int) (this.keys[0] >>> shift) & 0xFF] == this.size) {
+            return;
+        }//end if
+
+        int sum = 0;
+        for (int i = 0; i < COUNTS.length; ++i) {
+            final int COUNT = COUNTS[i];
+            COUNTS[i] = sum;
+            sum += COUNT;
+        }//end for
+
+        for (int i = 0; i < this.size; ++i) {
+            final long KEY = this.keys[i];
+            this.scratch[COUNTS[(int) (KEY >>> shift) & 0xFF]++] = KEY;
+        }//end for
+
+        final long[] TEMP = this.keys;
+        this.keys = this.scratch;
+        this.scratch = TEMP;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= this.keys.length) {
+            return;
+        }//end if
+
+        final int NEW_CAPACITY = (int) Math.min(DeferredQueue.MAX_SIZE,
+                Math.max(capacity, 2L * this.keys.length));
+        this.data = Arrays.copyOf(this.data, Math.multiplyExact(NEW_CAPACITY,
+                this.RECORD_FLOATS));
+        this.textures = Arrays.copyOf(this.textures, NEW_CAPACITY);
+        this.materials = Arrays.copyOf(this.materials, NEW_CAPACITY);
+        this.keys = Arrays.copyOf(this.keys, NEW_CAPACITY);
+        this.scratch = new long[NEW_CAPACITY];
+    }
+
+}
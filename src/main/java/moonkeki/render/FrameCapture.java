@@ -0,0 +1,337 @@
+package moonkeki.render;
+
+import java.awt.Color;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Records what the renderers are asked to do during a number of frames into a
+ * file, to be replayed by a {@link FrameReplay}: the quads queued to the
+ * {@link BatchRenderer}s and their explicit flushes, the {@link ShaderRenderer}
+ * passes and the color and depth clears of the canvases. A {@link Texture} is
+ * recorded, with its texels and whether it has a depth buffer, the first time
+ * it is drawn from or onto, so textures created before the capture started are
+ * recorded too. The draws of an {@link InstancedRenderer}, a {@link
+ * StaticBatch} or a {@link TileMap} are not recorded, as their geometry lives
+ * in GPU buffers that a replay can't rebuild from the recorded commands.
+ *
+ * <p>The quads are recorded before culling and batching, so a replay goes
+ * through the same culling, sorting and flushes. What the file can't hold is
+ * replayed by its nearest equivalent: a {@link Material} keeps its {@link
+ * Material.Blend} but is drawn with the default {@link ShaderProgram}s, a
+ * ShaderRenderer pass with {@link ShaderProgram#DEFAULT}, and the custom
+ * vertex attributes of a BatchRenderer are dropped.
+ *
+ * <p>A capture ends after its frames, counted by {@link #endFrame()}, which is
+ * called once per frame by the {@link moonkeki.app.Application}, after the
+ * buffers are swapped.
+ */
+public final class FrameCapture {
+
+    //The first int of the file
+    static final int MAGIC = 0x4D4B4643;
+    static final short VERSION = 2;
+
+    //The tags of the records
+    static final byte TEXTURE = 1;
+    static final byte MATERIAL = 2;
+    static final byte RENDERER = 3;
+    static final byte QUAD = 4;
+    static final byte FLUSH = 5;
+    static final byte CLEAR = 6;
+    static final byte SHADER_PASSES = 7;
+    static final byte END_FRAME = 8;
+    static final byte CLEAR_DEPTH = 9;
+
+    //The kinds of the recorded canvases
+    static final byte VOID_CANVAS = 0;
+    static final byte WINDOW_CANVAS = 1;
+    static final byte TEXTURE_CANVAS = 2;
+
+    //The flags of a RENDERER record
+    static final int DEFERRED = 1;
+    static final int STABLE = 1 << 1;
+    static final int CULLING = 1 << 2;
+    static final int COLORED = 1 << 3;
+    static final int DEPTH_TESTED = 1 << 4;
+
+    //Material.DEFAULT is not recorded, it is always 0
+    static final int DEFAULT_MATERIAL = 0;
+
+    //The ids of the recorded objects
+    private static final Map<Texture, Integer> TEXTURES =
+            new IdentityHashMap<>();
+    private static final Map<Material, Integer> MATERIALS =
+            new IdentityHashMap<>();
+    private static final Map<BatchRenderer, Integer> RENDERERS =
+            new IdentityHashMap<>();
+    private static DataOutputStream output; //null unless capturing
+    private static int framesLeft;
+    //While > 0, the renderers are driven by a recorded command, e.g. the
+    //passes of a ShaderRenderer, and are not recorded
+    private static int suspended;
+
+    private FrameCapture() {}
+
+    /**
+     * Starts recording the next frames into a file, replacing it if it exists.
+     * @throws IllegalArgumentException If {@code frames < 1}.
+     * @throws IllegalStateException If a capture is in progress.
+     * @throws IOException If the file can't be written.
+     */
+    public static void start(Path path, int frames) throws IOException {
+        if (frames < 1) {
+            throw new IllegalArgumentException("Argument frames must be " +
+                    "positive.");
+        }//end if
+
+        if (FrameCapture.isCapturing()) {
+            throw new IllegalStateException("A capture is in progress.");
+        }//end if
+
+        final DataOutputStream OUTPUT = new DataOutputStream(
+                new BufferedOutputStream(new GZIPOutputStream(
+                        Files.newOutputStream(path))));
+        OUTPUT.writeInt(FrameCapture.MAGIC);
+        OUTPUT.writeShort(FrameCapture.VERSION);
+        FrameCapture.output = OUTPUT;
+        FrameCapture.framesLeft = frames;
+    }
+
+    //Ends the capture before its frames, the current frame is dropped
+    public static void stop() throws IOException {
+        if (!FrameCapture.isCapturing()) {
+            return;
+        }//end if
+
+        final DataOutputStream OUTPUT = FrameCapture.output;
+        FrameCapture.output = null;
+        FrameCapture.TEXTURES.clear();
+        FrameCapture.MATERIALS.clear();
+        FrameCapture.RENDERERS.clear();
+        OUTPUT.close();
+    }
+
+    public static boolean isCapturing() {
+        return FrameCapture.output != null;
+    }
+
+    //Whether the renderers should record what they are asked to do
+    static boolean isRecording() {
+        return FrameCapture.output != null && 0 == FrameCapture.suspended;
+    }
+
+    static void suspend() {
+        ++FrameCapture.suspended;
+    }
+
+    static void resume() {
+        --FrameCapture.suspended;
+    }
+
+    /**
+     * Ends the current frame, and the capture if it was its last one.
+     * @throws UncheckedIOException If the file can't be written.
+     */
+    public static void endFrame() {
+        if (!FrameCapture.isCapturing()) {
+            return;
+        }//end if
+
+        try {
+            FrameCapture.output.writeByte(FrameCapture.END_FRAME);
+            if (0 == --FrameCapture.framesLeft) {
+                FrameCapture.stop();
+            }//end if
+        } catch (IOException e) {
+            FrameCapture.abort(e);
+        }
+    }
+
+    //A quad in the DeferredQueue record format, before culling. tint is that
+    //of a colored BatchRenderer.
+    static void recordQuad(BatchRenderer renderer, Texture texture,
+                           Material material, float[] quad, int offset,
+                           int layer, int tint) {
+        try {
+            final int RENDERER = FrameCapture.idOf(renderer);
+            final int TEXTURE = FrameCapture.idOf(texture);
+            final int MATERIAL = FrameCapture.idOf(material);
+            final DataOutputStream OUTPUT = FrameCapture.output;
+            OUTPUT.writeByte(FrameCapture.QUAD);
+            OUTPUT.writeInt(RENDERER);
+            OUTPUT.writeInt(TEXTURE);
+            OUTPUT.writeInt(MATERIAL);
+            OUTPUT.writeInt(layer);
+            for (int i = 0; i < DeferredQueue.FLOATS_PER_RECORD; ++i) {
+                OUTPUT.writeFloat(quad[offset + i]);
+            }//end for
+            OUTPUT.writeInt(tint);
+        } catch (IOException e) {
+            FrameCapture.abort(e);
+        }
+    }
+
+    static void recordFlush(BatchRenderer renderer) {
+        try {
+            final int RENDERER = FrameCapture.idOf(renderer);
+            FrameCapture.output.writeByte(FrameCapture.FLUSH);
+            FrameCapture.output.writeInt(RENDERER);
+        } catch (IOException e) {
+            FrameCapture.abort(e);
+        }
+    }
+
+    static void recordClear(Canvas canvas, Color color) {
+        try {
+            FrameCapture.prepare(canvas);
+            FrameCapture.output.writeByte(FrameCapture.CLEAR);
+            FrameCapture.writeCanvas(canvas);
+            FrameCapture.output.writeInt(color.getRGB());
+        } catch (IOException e) {
+            FrameCapture.abort(e);
+        }
+    }
+
+    static void recordClearDepth(Canvas canvas) {
+        try {
+            FrameCapture.prepare(canvas);
+            FrameCapture.output.writeByte(FrameCapture.CLEAR_DEPTH);
+            FrameCapture.writeCanvas(canvas);
+        } catch (IOException e) {
+            FrameCapture.abort(e);
+        }
+    }
+
+    //passes is the number of ShaderPrograms the canvas went through
+    static void recordShaderPasses(Canvas canvas, int passes) {
+        try {
+            FrameCapture.prepare(canvas);
+            FrameCapture.output.writeByte(FrameCapture.SHADER_PASSES);
+            FrameCapture.writeCanvas(canvas);
+            FrameCapture.output.writeInt(passes);
+        } catch (IOException e) {
+            FrameCapture.abort(e);
+        }
+    }
+
+    //Closes the file, what was written so far can still be replayed
+    private static void abort(IOException e) {
+        try {
+            FrameCapture.stop();
+        } catch (IOException suppressed) {
+            e.addSuppressed(suppressed);
+        }
+
+        throw new UncheckedIOException(e);
+    }
+
+    private static int idOf(Texture texture) throws IOException {
+        final Integer ID = FrameCapture.TEXTURES.get(texture);
+        if (ID != null) {
+            return ID;
+        }//end if
+
+        final int NEW_ID = FrameCapture.TEXTURES.size();
+        final int[] TEXELS = texture.getTexels();
+        final DataOutputStream OUTPUT = FrameCapture.output;
+        OUTPUT.writeByte(FrameCapture.TEXTURE);
+        OUTPUT.writeInt(NEW_ID);
+        OUTPUT.writeInt(texture.getWidth());
+        OUTPUT.writeInt(texture.getHeight());
+        OUTPUT.writeBoolean(texture.hasDepthBuffer());
+        for (int t : TEXELS) {
+            OUTPUT.writeInt(t);
+        }//end for
+
+        FrameCapture.TEXTURES.put(texture, NEW_ID);
+        return NEW_ID;
+    }
+
+    private static int idOf(Material material) throws IOException {
+        if (Material.DEFAULT == material) {
+            return FrameCapture.DEFAULT_MATERIAL;
+        }//end if
+
+        final Integer ID = FrameCapture.MATERIALS.get(material);
+        if (ID != null) {
+            return ID;
+        }//end if
+
+        final int NEW_ID = FrameCapture.MATERIALS.size() + 1;
+        FrameCapture.output.writeByte(FrameCapture.MATERIAL);
+        FrameCapture.output.writeInt(NEW_ID);
+        FrameCapture.output.writeByte(material.getBlend().ordinal());
+
+        FrameCapture.MATERIALS.put(material, NEW_ID);
+        return NEW_ID;
+    }
+
+    private static int idOf(BatchRenderer renderer) throws IOException {
+        final Integer ID = FrameCapture.RENDERERS.get(renderer);
+        if (ID != null) {
+            return ID;
+        }//end if
+
+        final Canvas CANVAS = renderer.getCanvas();
+        FrameCapture.prepare(CANVAS);
+        final int NEW_ID = FrameCapture.RENDERERS.size();
+        final int FLAGS = (renderer.isDeferred() ? FrameCapture.DEFERRED : 0) |
+                          (renderer.isStable() ? FrameCapture.STABLE : 0) |
+                          (renderer.isCulling() ? FrameCapture.CULLING : 0) |
+                          (renderer.isColored() ? FrameCapture.COLORED : 0) |
+                          (renderer.isDepthTested() ?
+                           FrameCapture.DEPTH_TESTED : 0);
+        final double[] MATRIX = new double[6];
+        renderer.getTransform().getMatrix(MATRIX);
+
+        final DataOutputStream OUTPUT = FrameCapture.output;
+        OUTPUT.writeByte(FrameCapture.RENDERER);
+        OUTPUT.writeInt(NEW_ID);
+        OUTPUT.writeInt(renderer.capacity());
+        OUTPUT.writeInt(renderer.textureSlots());
+        OUTPUT.writeByte(FLAGS);
+        for (double m : MATRIX) {
+            OUTPUT.writeDouble(m);
+        }//end for
+        FrameCapture.writeCanvas(CANVAS);
+
+        FrameCapture.RENDERERS.put(renderer, NEW_ID);
+        return NEW_ID;
+    }
+
+    //Records the Texture of canvas, if any, ahead of the record that refers to
+    //canvas
+    private static void prepare(Canvas canvas) throws IOException {
+        if (!canvas.isVoid() && canvas instanceof Pixmap p) {
+            FrameCapture.idOf(p.getTexture());
+        }//end if
+    }
+
+    private static void writeCanvas(Canvas canvas) throws IOException {
+        final DataOutputStream OUTPUT = FrameCapture.output;
+        if (canvas.isVoid()) {
+            OUTPUT.writeByte(FrameCapture.VOID_CANVAS);
+            return;
+        }//end if
+
+        if (canvas instanceof Pixmap p) {
+            OUTPUT.writeByte(FrameCapture.TEXTURE_CANVAS);
+            OUTPUT.writeInt(FrameCapture.TEXTURES.get(p.getTexture()));
+        } else {
+            OUTPUT.writeByte(FrameCapture.WINDOW_CANVAS);
+        }//end if
+        OUTPUT.writeInt(canvas.getXOffset());
+        OUTPUT.writeInt(canvas.getYOffset());
+        OUTPUT.writeInt(canvas.getWidth());
+        OUTPUT.writeInt(canvas.getHeight());
+    }
+
+}
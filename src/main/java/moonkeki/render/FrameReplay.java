@@ -0,0 +1,321 @@
+package moonkeki.render;
+
+import org.lwjgl.opengl.GL11;
+
+import java.awt.Color;
+import java.awt.geom.AffineTransform;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Replays the frames recorded by a {@link FrameCapture}, as fast as the
+ * renderers allow, e.g. in a headless {@link moonkeki.app.Application}, to
+ * compare renderer changes on a recorded workload.
+ *
+ * <p>The file is decoded, and its {@link Texture}s, {@link Material}s and
+ * renderers are created, by {@link #load(Path)}, so that {@link #replay(int)}
+ * measures the renderers only. A frame ends as it does in an Application, with
+ * {@link GpuTimer#endFrame()} and {@link RenderStatistics#endFrame()}, so both
+ * report on the replayed frames. The window must be at least as large as the
+ * one the frames were recorded on.
+ */
+public final class FrameReplay implements AutoCloseable {
+
+    //A recorded canvas by value, as the decoded canvases are new instances.
+    //textureId is -1 unless kind is TEXTURE_CANVAS.
+    private record CanvasKey(int kind, int textureId, int x, int y, int width,
+                             int height) {}
+
+    private final List<Texture> TEXTURES = new ArrayList<>();
+    private final List<Material> MATERIALS = new ArrayList<>();
+    private final List<BatchRenderer> RENDERERS = new ArrayList<>();
+    //By the canvas they draw onto
+    private final Map<CanvasKey, ShaderRenderer> SHADER_RENDERERS =
+            new HashMap<>();
+    private final List<Runnable[]> FRAMES = new ArrayList<>();
+    private final int FRAMEBUFFER_ID = RenderState.genFramebuffer();
+    private boolean closed;
+
+    /**
+     * Decodes the frames of a file written by a {@link FrameCapture}. Requires
+     * a current OpenGL context, in which the frames will be replayed.
+     * @throws IOException If the file can't be read, or is not a frame
+     * capture.
+     */
+    public static FrameReplay load(Path path) throws IOException {
+        final FrameReplay REPLAY = new FrameReplay();
+        try (DataInputStream input = new DataInputStream(
+                new BufferedInputStream(new GZIPInputStream(
+                        Files.newInputStream(path))))) {
+            REPLAY.decode(input);
+        } catch (IOException | RuntimeException e) {
+            REPLAY.close();
+            throw e;
+        }
+
+        return REPLAY;
+    }
+
+    private FrameReplay() {
+        this.MATERIALS.add(Material.DEFAULT);
+    }
+
+    public int frameCount() {
+        this.ensureOpen();
+        return this.FRAMES.size();
+    }
+
+    /**
+     * Replays a frame and waits for the GPU to finish it.
+     * @return The nanoseconds it took, from the first command until the GPU
+     * finished.
+     * @throws IndexOutOfBoundsException If {@code frame} is not in [0, {@link
+     * #frameCount()}).
+     */
+    public long replay(int frame) {
+        this.ensureOpen();
+        final Runnable[] COMMANDS = this.FRAMES.get(frame);
+        final long START = System.nanoTime();
+        for (Runnable c : COMMANDS) {
+            c.run();
+        }//end for
+        GL11.glFinish();
+        final long NANOS = System.nanoTime() - START;
+
+        GpuTimer.endFrame();
+        RenderStatistics.endFrame();
+        return NANOS;
+    }
+
+    //The nanoseconds of every frame, replayed in order
+    public long[] replayAll() {
+        final long[] NANOS = new long[this.frameCount()];
+        for (int i = 0; i < NANOS.length; ++i) {
+            NANOS[i] = this.replay(i);
+        }//end for
+
+        return NANOS;
+    }
+
+    public boolean isClosed() {
+        return this.closed;
+    }
+
+    @Override
+    public void close() {
+        if (this.isClosed()) {
+            return;
+        }//end if
+
+        this.RENDERERS.forEach(BatchRenderer::close);
+        this.SHADER_RENDERERS.values().forEach(ShaderRenderer::close);
+        this.TEXTURES.forEach(Texture::close);
+        RenderState.deleteFramebuffer(this.FRAMEBUFFER_ID);
+        this.FRAMES.clear();
+        this.closed = true;
+    }
+
+    private void decode(DataInputStream input) throws IOException {
+        if (input.readInt() != FrameCapture.MAGIC) {
+            throw new IOException("The file is not a frame capture.");
+        }//end if
+
+        final short VERSION = input.readShort();
+        if (VERSION != FrameCapture.VERSION) {
+            throw new IOException("Unsupported frame capture version %d."
+                                  .formatted(VERSION));
+        }//end if
+
+        final List<Runnable> COMMANDS = new ArrayList<>();
+        int tag;
+        //The commands after the last END_FRAME are of a dropped frame
+        while ((tag = input.read()) != -1) {
+            switch (tag) {
+                case FrameCapture.TEXTURE -> this.decodeTexture(input);
+                case FrameCapture.MATERIAL -> this.decodeMaterial(input);
+                case FrameCapture.RENDERER -> this.decodeRenderer(input);
+                case FrameCapture.QUAD -> COMMANDS.add(this.decodeQuad(input));
+                case FrameCapture.FLUSH -> COMMANDS.add(this.RENDERERS.get(
+                        input.readInt())::flush);
+                case FrameCapture.CLEAR -> {
+                    final Canvas CANVAS = this.decodeCanvas(input);
+                    final Color COLOR = new Color(input.readInt(), true);
+                    COMMANDS.add(() -> CANVAS.clear(COLOR,
+                                                    this.FRAMEBUFFER_ID));
+                }
+                case FrameCapture.CLEAR_DEPTH -> {
+                    final Canvas CANVAS = this.decodeCanvas(input);
+                    COMMANDS.add(() -> CANVAS.clearDepth(this.FRAMEBUFFER_ID));
+                }
+                case FrameCapture.SHADER_PASSES -> {
+                    final CanvasKey KEY = FrameReplay.decodeCanvasKey(input);
+                    final int PASSES = input.readInt();
+                    ShaderRenderer renderer = this.SHADER_RENDERERS.get(KEY);
+                    if (null == renderer) {
+                        renderer = ShaderRenderer.builder()
+                                                 .ofCanvas(this.canvasOf(KEY))
+                                                 .longLived()
+                                                 .build();
+                        this.SHADER_RENDERERS.put(KEY, renderer);
+                    }//end if
+                    //Not to be created while a frame is timed
+                    renderer.preparePostTextures(PASSES);
+                    final ShaderRenderer RENDERER = renderer;
+                    COMMANDS.add(RENDERER.shaderCommand()
+                                         .add(ShaderProgram.DEFAULT, PASSES)
+                                         ::apply);
+                }
+                case FrameCapture.END_FRAME -> {
+                    this.FRAMES.add(COMMANDS.toArray(new Runnable[0]));
+                    COMMANDS.clear();
+                }
+                default -> throw new IOException("Unknown record %d."
+                                                 .formatted(tag));
+            }//end switch
+        }//end while
+    }
+
+    private void decodeTexture(DataInputStream input) throws IOException {
+        FrameReplay.checkId(input.readInt(), this.TEXTURES);
+        final int WIDTH = input.readInt();
+        final int HEIGHT = input.readInt();
+        final boolean DEPTH_BUFFER = input.readBoolean();
+        final int[] TEXELS = new int[Math.multiplyExact(WIDTH, HEIGHT)];
+        for (int i = 0; i < TEXELS.length; ++i) {
+            TEXELS[i] = input.readInt();
+        }//end for
+
+        final Texture TEXTURE = new Texture(WIDTH, HEIGHT,
+                                            (i, j) -> TEXELS[i * WIDTH + j]);
+        if (DEPTH_BUFFER) {
+            TEXTURE.attachDepthBuffer();
+        }//end if
+        this.TEXTURES.add(TEXTURE);
+    }
+
+    private void decodeMaterial(DataInputStream input) throws IOException {
+        FrameReplay.checkId(input.readInt(), this.MATERIALS);
+        final int BLEND = input.readUnsignedByte();
+        if (BLEND >= Material.Blend.values().length) {
+            throw new IOException("Unknown blend %d.".formatted(BLEND));
+        }//end if
+
+        this.MATERIALS.add(Material.builder()
+                                   .ofBlend(Material.Blend.values()[BLEND])
+                                   .build());
+    }
+
+    private void decodeRenderer(DataInputStream input) throws IOException {
+        FrameReplay.checkId(input.readInt(), this.RENDERERS);
+        final int CAPACITY = input.readInt();
+        final int TEXTURE_SLOTS = input.readInt();
+        final int FLAGS = input.readUnsignedByte();
+        final double[] MATRIX = new double[6];
+        for (int i = 0; i < MATRIX.length; ++i) {
+            MATRIX[i] = input.readDouble();
+        }//end for
+        final Canvas CANVAS = this.decodeCanvas(input);
+
+        final BatchRenderer.Builder BUILDER = BatchRenderer.builder()
+                .ofCanvas(CANVAS)
+                .ofTransform(new AffineTransform(MATRIX))
+                .ofCapacity(CAPACITY)
+                .ofTextureSlots(TEXTURE_SLOTS)
+                .longLived();
+        if ((FLAGS & FrameCapture.DEFERRED) != 0) {
+            BUILDER.deferred((FLAGS & FrameCapture.STABLE) != 0);
+        }//end if
+
+        if ((FLAGS & FrameCapture.CULLING) != 0) {
+            BUILDER.culling();
+        }//end if
+
+        if ((FLAGS & FrameCapture.COLORED) != 0) {
+            BUILDER.colored();
+        }//end if
+
+        if ((FLAGS & FrameCapture.DEPTH_TESTED) != 0) {
+            BUILDER.depthTested();
+        }//end if
+        this.RENDERERS.add(BUILDER.build());
+    }
+
+    private Runnable decodeQuad(DataInputStream input) throws IOException {
+        final BatchRenderer RENDERER = this.RENDERERS.get(input.readInt());
+        final Texture TEXTURE = this.TEXTURES.get(input.readInt());
+        final Material MATERIAL = this.MATERIALS.get(input.readInt());
+        final int LAYER = input.readInt();
+        final float[] QUAD = new float[DeferredQueue.FLOATS_PER_RECORD];
+        for (int i = 0; i < QUAD.length; ++i) {
+            QUAD[i] = input.readFloat();
+        }//end for
+        final int TINT = input.readInt();
+        //In the format of the extras of a colored BatchRenderer
+        final float[] EXTRAS = RENDERER.isColored() ?
+                               new float[] {TINT >>> 16, TINT & 0xFFFF} :
+                               new float[0];
+
+        return () -> RENDERER.enqueue(TEXTURE, MATERIAL, QUAD, 0, LAYER,
+                                      EXTRAS);
+    }
+
+    private Canvas decodeCanvas(DataInputStream input) throws IOException {
+        return this.canvasOf(FrameReplay.decodeCanvasKey(input));
+    }
+
+    private static CanvasKey decodeCanvasKey(DataInputStream input)
+            throws IOException {
+        final int KIND = input.readUnsignedByte();
+        if (FrameCapture.VOID_CANVAS == KIND) {
+            return new CanvasKey(KIND, -1, 0, 0, 0, 0);
+        }//end if
+
+        final int TEXTURE_ID = FrameCapture.TEXTURE_CANVAS == KIND ?
+                               input.readInt() : -1;
+        return new CanvasKey(KIND, TEXTURE_ID, input.readInt(),
+                             input.readInt(), input.readInt(),
+                             input.readInt());
+    }
+
+    private Canvas canvasOf(CanvasKey key) throws IOException {
+        switch (key.kind()) {
+            case FrameCapture.VOID_CANVAS -> {
+                return Canvas.VOID;
+            }
+            case FrameCapture.WINDOW_CANVAS -> {
+                return WindowRegion.WINDOW.subRegion(key.x(), key.y(),
+                                                     key.width(),
+                                                     key.height());
+            }
+            case FrameCapture.TEXTURE_CANVAS -> {
+                return this.TEXTURES.get(key.textureId())
+                                    .subRegion(key.x(), key.y(),
+                                               key.width(), key.height());
+            }
+            default -> throw new IOException("Unknown canvas %d."
+                                             .formatted(key.kind()));
+        }//end switch
+    }
+
+    //The records of a kind are numbered in the order they were written
+    private static void checkId(int id, List<?> decoded) throws IOException {
+        if (id != decoded.size()) {
+            throw new IOException("Record %d is out of order.".formatted(id));
+        }//end if
+    }
+
+    private void ensureOpen() throws IllegalStateException {
+        if (this.isClosed()) {
+            throw new IllegalStateException("This FrameReplay is closed.");
+        }//end if
+    }
+
+}
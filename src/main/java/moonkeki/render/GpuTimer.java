@@ -0,0 +1,177 @@
+package moonkeki.render;
+
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL33;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Measures the time the GPU spends on named passes, with {@code
+ * GL_TIME_ELAPSED} queries. The draw calls of a {@link BatchRenderer}, the
+ * {@link ShaderRenderer} passes and {@link
+ * Renderer#clearCanvas(java.awt.Color)} are timed as "BatchRenderer.draw",
+ * "ShaderRenderer.apply" and "Renderer.clearCanvas", and other passes can be
+ * timed with {@link #begin(String)} and {@link #end()}.
+ *
+ * <p>The results of a frame are read {@link #LATENCY} frames after it, when
+ * the GPU is done with it, so that reading them never stalls. A result that is
+ * still not available by then is dropped, and counted by {@link
+ * #droppedCount()}.
+ *
+ * <p>Only one query can be active at a time, so a pass that begins within
+ * another one is timed as part of it. A {@link GpuTimer} is disabled by
+ * default, and costs nothing until it is enabled.
+ */
+public final class GpuTimer {
+
+    //The queries of a frame, in the order they were issued
+    private static final class Frame {
+        int[] queries = new int[16];
+        String[] passes = new String[16];
+        int size;
+
+        void add(int query, String pass) {
+            if (this.size == this.queries.length) {
+                this.queries = Arrays.copyOf(this.queries, 2 * this.size);
+                this.passes = Arrays.copyOf(this.passes, 2 * this.size);
+            }//end if
+
+            this.queries[this.size] = query;
+            this.passes[this.size] = pass;
+            ++this.size;
+        }
+    }
+
+    //The number of frames after which the results of a frame are read
+    public static final int LATENCY = 3;
+
+    private static final Frame[] FRAMES = new Frame[GpuTimer.LATENCY + 1];
+    //The query objects whose results were read, to be reused
+    private static int[] pool = new int[16];
+    private static int poolSize;
+    private static int frame;
+    //Of the passes that began but haven't ended, the outermost one is timed
+    private static int depth;
+    private static boolean enabled;
+    //pass -> nanoseconds, of the last frame whose results were read
+    private static final Map<String, Long> TIMES = new LinkedHashMap<>();
+    private static long droppedCount;
+
+    static {
+        for (int i = 0; i < GpuTimer.FRAMES.length; ++i) {
+            GpuTimer.FRAMES[i] = new Frame();
+        }//end for
+    }
+
+    private GpuTimer() {}
+
+    public static void enable() {
+        GpuTimer.enabled = true;
+    }
+
+    //The passes of the frames in flight are still read
+    public static void disable() {
+        GpuTimer.enabled = false;
+    }
+
+    public static boolean isEnabled() {
+        return GpuTimer.enabled;
+    }
+
+    //Begins timing pass, which must be matched by end()
+    public static void begin(String pass) {
+        if (!GpuTimer.enabled || GpuTimer.depth++ > 0) {
+            return;
+        }//end if
+
+        final int QUERY = 0 == GpuTimer.poolSize ? GL15.glGenQueries() :
+                          GpuTimer.pool[--GpuTimer.poolSize];
+        GL15.glBeginQuery(GL33.GL_TIME_ELAPSED, QUERY);
+        GpuTimer.FRAMES[GpuTimer.frame].add(QUERY, pass);
+    }
+
+    public static void end() {
+        if (0 == GpuTimer.depth) {
+            return;
+        }//end if
+
+        if (0 == --GpuTimer.depth) {
+            GL15.glEndQuery(GL33.GL_TIME_ELAPSED);
+        }//end if
+    }
+
+    /**
+     * Ends the current frame, and reads the results of the frame {@link
+     * #LATENCY} frames before it. Called once per frame by the {@link
+     * moonkeki.app.Application}, after the buffers are swapped.
+     * @throws IllegalStateException If a pass has begun but not ended.
+     */
+    public static void endFrame() {
+        if (GpuTimer.depth > 0) {
+            throw new IllegalStateException("A pass has begun but not " +
+                    "ended.");
+        }//end if
+
+        GpuTimer.frame = (GpuTimer.frame + 1) % GpuTimer.FRAMES.length;
+        final Frame OLDEST = GpuTimer.FRAMES[GpuTimer.frame];
+        GpuTimer.TIMES.clear();
+        for (int i = 0; i < OLDEST.size; ++i) {
+            final int QUERY = OLDEST.queries[i];
+            if (GL15.glGetQueryObjecti(QUERY, GL15.GL_QUERY_RESULT_AVAILABLE)
+                != 0) {
+                final long NANOS = GL33.glGetQueryObjectui64(QUERY,
+                        GL15.GL_QUERY_RESULT);
+                GpuTimer.TIMES.merge(OLDEST.passes[i], NANOS, Long::sum);
+            } else {
+                ++GpuTimer.droppedCount;
+            }//end if
+
+            GpuTimer.release(QUERY);
+            OLDEST.passes[i] = null;
+        }//end for
+        OLDEST.size = 0;
+    }
+
+    //pass -> nanoseconds the GPU spent on it, in the last frame whose results
+    //were read. The passes are in the order they first ran in that frame.
+    public static Map<String, Long> times() {
+        return Collections.unmodifiableMap(GpuTimer.TIMES);
+    }
+
+    //In nanoseconds, 0 if pass didn't run in the last frame that was read
+    public static long timeOf(String pass) {
+        return GpuTimer.TIMES.getOrDefault(pass, 0L);
+    }
+
+    //The sum of the times of all passes, in nanoseconds
+    public static long totalTime() {
+        long total = 0L;
+        for (long t : GpuTimer.TIMES.values()) {
+            total += t;
+        }//end for
+
+        return total;
+    }
+
+    //The number of results that weren't available in time, since the last
+    //resetCounters()
+    public static long droppedCount() {
+        return GpuTimer.droppedCount;
+    }
+
+    public static void resetCounters() {
+        GpuTimer.droppedCount = 0L;
+    }
+
+    private static void release(int query) {
+        if (GpuTimer.poolSize == GpuTimer.pool.length) {
+            GpuTimer.pool = Arrays.copyOf(GpuTimer.pool, 2 * GpuTimer.poolSize);
+        }//end if
+
+        GpuTimer.pool[GpuTimer.poolSize++] = query;
+    }
+
+}
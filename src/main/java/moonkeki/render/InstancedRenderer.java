@@ -0,0 +1,456 @@
+package moonkeki.render;
+
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL31;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+
+import java.awt.geom.AffineTransform;
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+/**
+ * A {@link PixmapRenderer} that uploads a single instance record per sprite,
+ * i.e. its rectangle, its texture rectangle and its affine transform, and lets
+ * the vertex shader expand the 4 corners of every sprite. Compared to a {@link
+ * BatchRenderer}, the corners are not transformed on the CPU and roughly a
+ * quarter of the data is uploaded, which pays off for large numbers of rotated
+ * or scaled sprites.
+ *
+ * <p>Custom shaders must declare the per-instance attributes of {@link
+ * ShaderProgram#INSTANCED}.
+ */
+public class InstancedRenderer extends PixmapRenderer implements AutoCloseable {
+
+    private static abstract class AbstractBuilder<T extends AbstractBuilder<T>>
+            implements PixmapRenderer.Builder<T> {
+        Canvas canvas = WindowRegion.WINDOW;
+        ShaderProgram shader = ShaderProgram.INSTANCED;
+        AffineTransform transform;
+
+        public T ofCanvas(Canvas canvas) {
+            this.canvas = canvas;
+            return this.getThis();
+        }
+
+        public T ofShader(ShaderProgram shader) {
+            this.shader = shader;
+            return this.getThis();
+        }
+
+        public T ofTransform(AffineTransform transform) {
+            this.transform = transform;
+            return this.getThis();
+        }
+
+        public abstract InstancedRenderer build();
+        abstract T getThis();
+    }
+
+    public static final class Builder extends AbstractBuilder<Builder> {
+        private int capacity = 1000; //56kB
+        private boolean shortLived;
+
+        private Builder() {}
+
+        public Builder ofCapacity(int capacity) {
+            if (capacity < 1) {
+                throw new IllegalArgumentException("Argument capacity must " +
+                        "be positive.");
+            }//end if
+
+            this.capacity = capacity;
+            return this;
+        }
+
+        public Builder shortLived() {
+            this.shortLived = true;
+            return this;
+        }
+
+        public Builder longLived() {
+            this.shortLived = false;
+            return this;
+        }
+
+        @Override
+        public InstancedRenderer build() {
+            if (null == this.transform) {
+                this.transform = new AffineTransform();
+            }//end if
+
+            return new InstancedRenderer(this);
+        }
+
+        @Override
+        Builder getThis() {
+            return this;
+        }
+    }
+
+    public final class Rebuilder extends AbstractBuilder<Rebuilder> {
+        private Rebuilder() {
+            this.canvas = InstancedRenderer.this.CANVAS;
+            this.shader = InstancedRenderer.this.SHADER;
+            this.transform = InstancedRenderer.this.TRANSFORM;
+        }
+
+        @Override
+        public InstancedRenderer build() {
+            InstancedRenderer.this.ensureOpen();
+            if (this.isClean()) {
+                return InstancedRenderer.this;
+            }//end if
+
+            RenderStatistics.countRebuild();
+            final InstancedRenderer NEW_IR = new InstancedRenderer(this);
+            InstancedRenderer.this.instances = null;
+            InstancedRenderer.this.dispenser = null;
+            InstancedRenderer.this.closed = true;
+
+            return NEW_IR;
+        }
+
+        @Override
+        Rebuilder getThis() {
+            return this;
+        }
+
+        boolean isClean() {
+            return this.canvas.equals(InstancedRenderer.this.CANVAS) &&
+                   this.shader.equals(InstancedRenderer.this.SHADER) &&
+                   this.transform.equals(InstancedRenderer.this.TRANSFORM);
+        }
+
+        private InstancedRenderer getInstancedRenderer() {
+            return InstancedRenderer.this;
+        }
+    }
+
+    public final class DrawCommand extends PixmapRenderer.AbstractDrawCommand
+                                implements PixmapRenderer.AttachedDrawCommand {
+        private DrawCommand() {}
+
+        @Override
+        public InstancedRenderer.DrawCommand ofPixmap(Pixmap pixmap) {
+            return (InstancedRenderer.DrawCommand) super.ofPixmap(pixmap);
+        }
+
+        @Override
+        public InstancedRenderer.DrawCommand atX(double x) {
+            return (InstancedRenderer.DrawCommand) super.atX(x);
+        }
+
+        @Override
+        public InstancedRenderer.DrawCommand atY(double y) {
+            return (InstancedRenderer.DrawCommand) super.atY(y);
+        }
+
+        @Override
+        public InstancedRenderer.DrawCommand atPosition(double x, double y) {
+            return (InstancedRenderer.DrawCommand) super.atPosition(x, y);
+        }
+
+        @Override
+        public InstancedRenderer.DrawCommand ofWidth(double width) {
+            return (InstancedRenderer.DrawCommand) super.ofWidth(width);
+        }
+
+        @Override
+        public InstancedRenderer.DrawCommand ofHeight(double height) {
+            return (InstancedRenderer.DrawCommand) super.ofHeight(height);
+        }
+
+        @Override
+        public InstancedRenderer.DrawCommand ofSize(double width,
+                                                    double height) {
+            return (InstancedRenderer.DrawCommand) super.ofSize(width, height);
+        }
+
+        @Override
+        public InstancedRenderer.DrawCommand ofMirroredX() {
+            return (InstancedRenderer.DrawCommand) super.ofMirroredX();
+        }
+
+        @Override
+        public InstancedRenderer.DrawCommand ofMirroredY() {
+            return (InstancedRenderer.DrawCommand) super.ofMirroredY();
+        }
+
+        @Override
+        public InstancedRenderer.DrawCommand unmirrorX() {
+            return (InstancedRenderer.DrawCommand) super.unmirrorX();
+        }
+
+        @Override
+        public InstancedRenderer.DrawCommand unmirrorY() {
+            return (InstancedRenderer.DrawCommand) super.unmirrorY();
+        }
+
+        @Override
+        public InstancedRenderer.DrawCommand withTransform(
+                AffineTransform transform) {
+            return (InstancedRenderer.DrawCommand) super.withTransform(
+                    transform);
+        }
+
+        @Override
+        public InstancedRenderer.DrawCommand onLayer(int layer) {
+            return (InstancedRenderer.DrawCommand) super.onLayer(layer);
+        }
+
+        @Override
+        public void process() {
+            this.queue();
+        }
+
+        public void queue() {
+            InstancedRenderer.this.queue(this);
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    //returns a new InstancedRenderer
+    public static InstancedRenderer getDefault() {
+        return InstancedRenderer.builder().build();
+    }
+
+    private static final int VERTICES_PER_INSTANCE = 4;
+
+    private ByteBuffer instances;
+    private Consumer<ByteBuffer> dispenser;
+    private int size;
+    private Texture texture; //of the instances written so far
+    private final Canvas CANVAS;
+    private final ShaderProgram SHADER;
+    private final AffineTransform TRANSFORM;
+    private final int CANVAS_FRAMEBUFFER_ID;
+    private final int BUFFER_OBJECT_ID;
+    private boolean closed;
+
+    private InstancedRenderer(Builder builder) {
+        final int BUFFER_SIZE = Math.multiplyExact(
+                VertexLayout.INSTANCED.getStride(), builder.capacity);
+        if (builder.shortLived) {
+            this.instances = MemoryStack.stackPush()
+                                        .malloc(BUFFER_SIZE);
+            this.dispenser = b -> MemoryStack.stackPop();
+        } else {
+            this.instances = MemoryUtil.memAlloc(BUFFER_SIZE);
+            this.dispenser = MemoryUtil::memFree;
+        }//end if
+
+        this.CANVAS = builder.canvas;
+        this.SHADER = builder.shader;
+        this.TRANSFORM = builder.transform;
+        this.CANVAS_FRAMEBUFFER_ID = this.CANVAS.getBackend().equals(
+                WindowRegion.WINDOW.getBackend()) ? 0 :
+                RenderState.genFramebuffer();
+        this.BUFFER_OBJECT_ID = GL15.glGenBuffers();
+    }
+
+    private InstancedRenderer(Rebuilder rebuilder) {
+        this.instances = rebuilder.getInstancedRenderer().instances;
+        this.dispenser = rebuilder.getInstancedRenderer().dispenser;
+        this.size = rebuilder.getInstancedRenderer().size;
+        this.texture = rebuilder.getInstancedRenderer().texture;
+        this.CANVAS = rebuilder.canvas;
+        this.SHADER = rebuilder.shader;
+        this.TRANSFORM = rebuilder.transform;
+
+        if (!this.CANVAS.getBackend().equals(WindowRegion.WINDOW.getBackend())
+            && rebuilder.getInstancedRenderer().CANVAS_FRAMEBUFFER_ID == 0) {
+            this.CANVAS_FRAMEBUFFER_ID = RenderState.genFramebuffer();
+        } else {
+            this.CANVAS_FRAMEBUFFER_ID = rebuilder.getInstancedRenderer()
+                                                  .CANVAS_FRAMEBUFFER_ID;
+        }//end if
+
+        this.BUFFER_OBJECT_ID = rebuilder.getInstancedRenderer()
+                .BUFFER_OBJECT_ID;
+    }
+
+    public Rebuilder rebuild() {
+        this.ensureOpen();
+        if (!this.isEmpty()) {
+            throw new IllegalStateException("Can't rebuild a non-empty " +
+                    "InstancedRenderer.");
+        }//end if
+
+        return new Rebuilder();
+    }
+
+    public InstancedRenderer.DrawCommand drawCommand() {
+        return new DrawCommand();
+    }
+
+    @Override
+    public void process(PixmapRenderer.DrawCommand drawCommand) {
+        this.queue(drawCommand);
+    }
+
+    public void queue(PixmapRenderer.DrawCommand drawCommand) {
+        this.ensureOpen();
+
+        final Pixmap PIXMAP = drawCommand.getPixmap();
+        if (PIXMAP.isVoid() || 0.0 == drawCommand.getWidth() ||
+                               0.0 == drawCommand.getHeight()) {
+            return;
+        }//end if
+
+        if (this.CANVAS.getBackend().equals(PIXMAP.getBackend())) {
+            throw new IllegalArgumentException("The pixmap of the " +
+                    "DrawCommand is the canvas of this InstancedRenderer.");
+        }//end if
+
+        final Texture TEXTURE = PIXMAP.getTexture();
+        if (this.size == this.capacity()) {
+            this.flush(RenderStatistics.FlushCause.BUFFER_FULL);
+        } else if (this.texture != null && !this.texture.equals(TEXTURE)) {
+            this.flush(RenderStatistics.FlushCause.TEXTURE_SWITCH);
+        }//end if
+        RenderStatistics.countQuads(1);
+        this.texture = TEXTURE;
+
+        //Mirroring is folded into the texture rectangle
+        final float MIN_U;
+        final float MAX_U;
+        final float MIN_V;
+        final float MAX_V;
+
+        if (drawCommand.isXMirrored()) {
+            MIN_U = PIXMAP.getMaxU();
+            MAX_U = PIXMAP.getMinU();
+        } else {
+            MIN_U = PIXMAP.getMinU();
+            MAX_U = PIXMAP.getMaxU();
+        }//end if
+
+        if (drawCommand.isYMirrored()) {
+            MIN_V = PIXMAP.getMaxV();
+            MAX_V = PIXMAP.getMinV();
+        } else {
+            MIN_V = PIXMAP.getMinV();
+            MAX_V = PIXMAP.getMaxV();
+        }//end if
+
+        final AffineTransform T = PixmapRenderer.transformOf(drawCommand);
+
+        this.instances.putFloat((float) drawCommand.getX())
+                      .putFloat((float) drawCommand.getY())
+                      .putFloat((float) drawCommand.getWidth())
+                      .putFloat((float) drawCommand.getHeight())
+                      .putFloat(MIN_U).putFloat(MIN_V)
+                      .putFloat(MAX_U).putFloat(MAX_V)
+                      .putFloat((float) T.getScaleX())
+                      .putFloat((float) T.getShearX())
+                      .putFloat((float) T.getTranslateX())
+                      .putFloat((float) T.getShearY())
+                      .putFloat((float) T.getScaleY())
+                      .putFloat((float) T.getTranslateY());
+        ++this.size;
+    }
+
+    public void flush() {
+        this.ensureOpen();
+        this.flush(RenderStatistics.FlushCause.EXPLICIT);
+    }
+
+    private void flush(RenderStatistics.FlushCause cause) {
+        if (0 == this.size) {
+            return;
+        }//end if
+        RenderStatistics.countFlush(cause);
+        RenderStatistics.countDrawCall();
+
+        this.CANVAS.setup(this.CANVAS_FRAMEBUFFER_ID);
+        this.texture.bind();
+
+        this.instances.flip();
+        RenderStatistics.countUpload(this.instances.remaining());
+        RenderState.bindArrayBuffer(this.BUFFER_OBJECT_ID);
+        GL15.glBufferData(GL15.GL_ARRAY_BUFFER, this.instances,
+                          GL15.GL_STREAM_DRAW);
+
+        this.SHADER.setUniformMatrix("transformMatrix",
+                PixmapRenderer.getCombined(this.CANVAS, this.TRANSFORM));
+        this.SHADER.use(VertexLayout.INSTANCED);
+        GL31.glDrawArraysInstanced(GL11.GL_TRIANGLE_STRIP, 0,
+                InstancedRenderer.VERTICES_PER_INSTANCE, this.size);
+
+        this.clear();
+    }
+
+    @Override
+    public Canvas getCanvas() {
+        this.ensureOpen();
+        return this.CANVAS;
+    }
+
+    public int size() {
+        this.ensureOpen();
+        return this.size;
+    }
+
+    public int capacity() {
+        this.ensureOpen();
+        return this.instances.capacity() / VertexLayout.INSTANCED.getStride();
+    }
+
+    public int space() {
+        return this.capacity() - this.size();
+    }
+
+    public boolean isEmpty() {
+        return this.size() == 0;
+    }
+
+    public boolean isFull() {
+        return this.space() == 0;
+    }
+
+    public void clear() {
+        this.ensureOpen();
+        this.instances.clear();
+        this.size = 0;
+        this.texture = null;
+    }
+
+    public boolean isClosed() {
+        return this.closed;
+    }
+
+    @Override
+    public void close() {
+        if (this.isClosed()) {
+            return;
+        }//end if
+
+        this.dispenser.accept(this.instances);
+        RenderState.deleteFramebuffer(this.CANVAS_FRAMEBUFFER_ID);
+        RenderState.deleteBuffer(this.BUFFER_OBJECT_ID);
+        this.closed = true;
+    }
+
+    @Override
+    void setupCanvas() {
+        this.getCanvas().setup(this.CANVAS_FRAMEBUFFER_ID);
+    }
+
+    @Override
+    void copyCanvasTo(Pixmap destination) {
+        this.getCanvas().copyTo(destination, this.CANVAS_FRAMEBUFFER_ID);
+    }
+
+    private void ensureOpen() throws IllegalStateException {
+        if (this.isClosed()) {
+            throw new IllegalStateException("This InstancedRenderer is " +
+                    "closed.");
+        }//end if
+    }
+
+}
@@ -163,6 +163,12 @@ public class InstantRenderer extends PixmapRenderer implements AutoCloseable {
             return this;
         }
 
+        @Override
+        public InstantRenderer.DrawCommand onLayer(int layer) {
+            this.DRAW_COMMAND.onLayer(layer);
+            return this;
+        }
+
         @Override
         public void process() {
             this.draw();
@@ -212,6 +218,11 @@ public class InstantRenderer extends PixmapRenderer implements AutoCloseable {
             return this.DRAW_COMMAND.getTransform();
         }
 
+        @Override
+        public int getLayer() {
+            return this.DRAW_COMMAND.getLayer();
+        }
+
         @Override
         public boolean equals(Object obj) {
             return this == obj || this.DRAW_COMMAND.equals(obj);
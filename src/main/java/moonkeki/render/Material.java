@@ -0,0 +1,201 @@
+package moonkeki.render;
+
+import org.lwjgl.opengl.GL11;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * How the quads of a {@link BatchRenderer} are shaded: a {@link ShaderProgram},
+ * the values of its uniform variables, the {@link UniformBuffer}s of its uniform
+ * blocks and a {@link Blend} mode. A BatchRenderer groups its quads by Material,
+ * so one BatchRenderer can draw quads of different effects, and switches the
+ * Material between batches.
+ *
+ * <p>A Material is immutable. Data that changes every frame should go through a
+ * UniformBuffer, which is read when the Material is applied.
+ *
+ * <p>The uniform variables of a Material only hold for its own quads: once
+ * they are drawn, the ShaderProgram gets back the values it had before, so
+ * they never carry over to the quads of {@link #DEFAULT}, or of another
+ * Material or renderer that uses the same ShaderProgram. The uniform block
+ * bindings are not restored.
+ */
+public final class Material {
+
+    public enum Blend {
+        //The source over the destination, by the source alpha
+        ALPHA(GL11.GL_SRC_ALPHA, GL11.GL_ONE_MINUS_SRC_ALPHA),
+        //For colors whose alpha is already multiplied in
+        PREMULTIPLIED(GL11.GL_ONE, GL11.GL_ONE_MINUS_SRC_ALPHA),
+        ADDITIVE(GL11.GL_SRC_ALPHA, GL11.GL_ONE),
+        MULTIPLY(GL11.GL_DST_COLOR, GL11.GL_ONE_MINUS_SRC_ALPHA),
+        //Blending disabled, the source replaces the destination
+        OPAQUE(GL11.GL_ONE, GL11.GL_ZERO);
+
+        private final int SOURCE;
+        private final int DESTINATION;
+
+        Blend(int source, int destination) {
+            this.SOURCE = source;
+            this.DESTINATION = destination;
+        }
+
+        void apply() {
+            if (Blend.OPAQUE == this) {
+                RenderState.disableBlend();
+                return;
+            }//end if
+
+            RenderState.enableBlend();
+            RenderState.blendFunc(this.SOURCE, this.DESTINATION);
+        }
+    }
+
+    public static final class Builder {
+        private ShaderProgram shader;
+        private Blend blend = Blend.ALPHA;
+        private final Map<String, float[]> FLOAT_UNIFORMS =
+                new LinkedHashMap<>();
+        private final Map<String, int[]> INT_UNIFORMS = new LinkedHashMap<>();
+        private final List<UniformBlock> UNIFORM_BLOCKS = new ArrayList<>();
+
+        private Builder() {}
+
+        //null for the ShaderProgram of the BatchRenderer
+        public Builder ofShader(ShaderProgram shader) {
+            this.shader = shader;
+            return this;
+        }
+
+        public Builder ofBlend(Blend blend) {
+            this.blend = blend;
+            return this;
+        }
+
+        //A float uniform variable, or a float array if values.length > 1
+        public Builder ofUniform(String name, float... values) {
+            if (values.length == 0) {
+                throw new IllegalArgumentException("Argument array values " +
+                        "can't have a length of 0.");
+            }//end if
+
+            this.FLOAT_UNIFORMS.put(name, values.clone());
+            return this;
+        }
+
+        //An int uniform variable, or an int array if values.length > 1
+        public Builder ofUniform(String name, int... values) {
+            if (values.length == 0) {
+                throw new IllegalArgumentException("Argument array values " +
+                        "can't have a length of 0.");
+            }//end if
+
+            this.INT_UNIFORMS.put(name, values.clone());
+            return this;
+        }
+
+        //The uniform block blockName reads buffer, through bindingPoint
+        public Builder ofUniformBlock(String blockName, int bindingPoint,
+                                      UniformBuffer buffer) {
+            if (bindingPoint < 0) {
+                throw new IllegalArgumentException("Argument bindingPoint " +
+                        "must be non-negative.");
+            }//end if
+
+            this.UNIFORM_BLOCKS.add(new UniformBlock(blockName, bindingPoint,
+                                                     buffer));
+            return this;
+        }
+
+        public Material build() {
+            return new Material(this);
+        }
+    }
+
+    private record UniformBlock(String name, int bindingPoint,
+                                UniformBuffer buffer) {}
+
+    //The ShaderProgram of the BatchRenderer, alpha blended
+    public static final Material DEFAULT = Material.builder().build();
+
+    private final ShaderProgram SHADER; //null for the one of the BatchRenderer
+    private final Blend BLEND;
+    private final String[] FLOAT_UNIFORM_NAMES;
+    private final float[][] FLOAT_UNIFORM_VALUES;
+    private final String[] INT_UNIFORM_NAMES;
+    private final int[][] INT_UNIFORM_VALUES;
+    private final UniformBlock[] UNIFORM_BLOCKS;
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    private Material(Builder builder) {
+        this.SHADER = builder.shader;
+        this.BLEND = builder.blend;
+        this.FLOAT_UNIFORM_NAMES = builder.FLOAT_UNIFORMS.keySet()
+                                                         .toArray(new String[0]);
+        this.FLOAT_UNIFORM_VALUES = builder.FLOAT_UNIFORMS.values()
+                                                          .toArray(new float[0][]);
+        this.INT_UNIFORM_NAMES = builder.INT_UNIFORMS.keySet()
+                                                     .toArray(new String[0]);
+        this.INT_UNIFORM_VALUES = builder.INT_UNIFORMS.values()
+                                                      .toArray(new int[0][]);
+        this.UNIFORM_BLOCKS = builder.UNIFORM_BLOCKS.toArray(
+                new UniformBlock[0]);
+    }
+
+    //null for the ShaderProgram of the BatchRenderer
+    public ShaderProgram getShader() {
+        return this.SHADER;
+    }
+
+    public Blend getBlend() {
+        return this.BLEND;
+    }
+
+    //Sets the blend mode, the uniform variables of shader and binds the uniform
+    //buffers. shader is the ShaderProgram this Material is drawn with. The
+    //values the uniform variables had are restored by restore(shader).
+    void apply(ShaderProgram shader) {
+        this.BLEND.apply();
+        for (int i = 0; i < this.FLOAT_UNIFORM_NAMES.length; ++i) {
+            final float[] VALUES = this.FLOAT_UNIFORM_VALUES[i];
+            shader.saveUniform(this.FLOAT_UNIFORM_NAMES[i]);
+            if (1 == VALUES.length) {
+                shader.setUniformVariable(this.FLOAT_UNIFORM_NAMES[i],
+                                          VALUES[0]);
+            } else {
+                shader.setUniformArray(this.FLOAT_UNIFORM_NAMES[i], VALUES);
+            }//end if
+        }//end for
+
+        for (int i = 0; i < this.INT_UNIFORM_NAMES.length; ++i) {
+            final int[] VALUES = this.INT_UNIFORM_VALUES[i];
+            shader.saveUniform(this.INT_UNIFORM_NAMES[i]);
+            if (1 == VALUES.length) {
+                shader.setUniformVariable(this.INT_UNIFORM_NAMES[i], VALUES[0]);
+            } else {
+                shader.setUniformArray(this.INT_UNIFORM_NAMES[i], VALUES);
+            }//end if
+        }//end for
+
+        for (UniformBlock b : this.UNIFORM_BLOCKS) {
+            shader.setUniformBlock(b.name(), b.bindingPoint());
+            b.buffer().bind(b.bindingPoint());
+        }//end for
+    }
+
+    //Restores the uniform variables of shader that apply(shader) set, once
+    //the quads of this Material are drawn
+    void restore(ShaderProgram shader) {
+        if (this.FLOAT_UNIFORM_NAMES.length > 0 ||
+            this.INT_UNIFORM_NAMES.length > 0) {
+            shader.restoreUniforms();
+        }//end if
+    }
+
+}
@@ -40,6 +40,15 @@ public abstract class Pixmap extends Canvas {
         private final int WIDTH;
         private final int HEIGHT;
 
+        /**
+         * The texture coordinates of this {@link Impl} region, computed once
+         * as the size of a {@link Texture} never changes.
+         */
+        private final float MIN_U;
+        private final float MAX_U;
+        private final float MIN_V;
+        private final float MAX_V;
+
         public Impl(Texture texture, int xOffset, int yOffset,
                                      int width, int height) {
             this.TEXTURE = texture;
@@ -47,6 +56,10 @@ public abstract class Pixmap extends Canvas {
             this.Y_OFFSET = yOffset;
             this.WIDTH = width;
             this.HEIGHT = height;
+            this.MIN_U = (float) xOffset / texture.getWidth();
+            this.MAX_U = (float) (xOffset + width) / texture.getWidth();
+            this.MIN_V = (float) yOffset / texture.getHeight();
+            this.MAX_V = (float) (yOffset + height) / texture.getHeight();
         }
 
         @Override
@@ -84,6 +97,30 @@ public abstract class Pixmap extends Canvas {
             return this.Y_OFFSET;
         }
 
+        @Override
+        float getMinU() {
+            this.ensureOpen();
+            return this.MIN_U;
+        }
+
+        @Override
+        float getMaxU() {
+            this.ensureOpen();
+            return this.MAX_U;
+        }
+
+        @Override
+        float getMinV() {
+            this.ensureOpen();
+            return this.MIN_V;
+        }
+
+        @Override
+        float getMaxV() {
+            this.ensureOpen();
+            return this.MAX_V;
+        }
+
         /**
          * Ensures that this {@link Impl} is open, i.e. {@link #isClosed()}
          * returns {@code false}, by throwing an exception if its closed. If
@@ -147,6 +184,9 @@ public abstract class Pixmap extends Canvas {
         @Override
         void clear(Color color, int framebufferId) {}
 
+        @Override
+        void clearDepth(int framebufferId) {}
+
         @Override
         int getXOffset() {
             throw new UnsupportedOperationException();
@@ -311,6 +351,11 @@ public abstract class Pixmap extends Canvas {
                                     GL11.GL_TEXTURE_2D,
                                     this.getTexture().getId(),
                                     0);
+        //Detaches the depth buffer of the previous texture, if there is none
+        GL30.glFramebufferRenderbuffer(GL30.GL_FRAMEBUFFER,
+                                       GL30.GL_DEPTH_ATTACHMENT,
+                                       GL30.GL_RENDERBUFFER,
+                                       this.getTexture().getDepthBufferId());
     }
 
     @Override
@@ -330,7 +375,7 @@ public abstract class Pixmap extends Canvas {
                     "has the same backing Texture as this Pixmap.");
         }
 
-        GL30.glBindFramebuffer(GL30.GL_READ_FRAMEBUFFER, sourceFramebufferId);
+        RenderState.bindReadFramebuffer(sourceFramebufferId);
         GL30.glFramebufferTexture2D(GL30.GL_READ_FRAMEBUFFER,
                                     GL30.GL_COLOR_ATTACHMENT0,
                                     GL11.GL_TEXTURE_2D,
@@ -31,6 +31,8 @@ public abstract class PixmapRenderer extends Renderer {
         DrawCommand unmirrorX();
         DrawCommand unmirrorY();
         DrawCommand withTransform(AffineTransform transform);
+        //Ignored, unless the renderer defers its draws
+        DrawCommand onLayer(int layer);
 
         Pixmap getPixmap();
         double getX();
@@ -40,6 +42,7 @@ public abstract class PixmapRenderer extends Renderer {
         boolean isXMirrored();
         boolean isYMirrored();
         AffineTransform getTransform();
+        int getLayer();
     }
 
     public interface AttachedDrawCommand extends DrawCommand {
@@ -58,6 +61,7 @@ public abstract class PixmapRenderer extends Renderer {
         AttachedDrawCommand unmirrorX();
         AttachedDrawCommand unmirrorY();
         AttachedDrawCommand withTransform(AffineTransform transform);
+        AttachedDrawCommand onLayer(int layer);
         void process();
     }
 
@@ -76,6 +80,7 @@ public abstract class PixmapRenderer extends Renderer {
         boolean isMirroredX;
         boolean isMirroredY;
         AffineTransform transform = new AffineTransform();
+        int layer;
 
         public DrawCommand ofPixmap(Pixmap pixmap) {
             this.pixmap = pixmap;
@@ -149,6 +154,11 @@ public abstract class PixmapRenderer extends Renderer {
             return this;
         }
 
+        public DrawCommand onLayer(int layer) {
+            this.layer = layer;
+            return this;
+        }
+
         @Override
         public Pixmap getPixmap() {
             return this.pixmap;
@@ -189,6 +199,11 @@ public abstract class PixmapRenderer extends Renderer {
             return new AffineTransform(this.transform);
         }
 
+        @Override
+        public int getLayer() {
+            return this.layer;
+        }
+
         @Override
         public boolean equals(Object obj) {
             if (this == obj) {
@@ -203,7 +218,8 @@ public abstract class PixmapRenderer extends Renderer {
                    Objects.equals(this.height, c.height) &&
                    this.isMirroredX == c.isMirroredX &&
                    this.isMirroredY == c.isMirroredY &&
-                   this.transform.equals(c.transform);
+                   this.transform.equals(c.transform) &&
+                   this.layer == c.layer;
         }
 
         @Override
@@ -212,18 +228,19 @@ public abstract class PixmapRenderer extends Renderer {
                                 this.x, this.y,
                                 this.width, this.height,
                                 this.isMirroredX, this.isMirroredY,
-                                this.transform);
+                                this.transform, this.layer);
         }
 
         @Override
         public String toString() {
             return ("DrawCommand[pixmap=%s, x=%s, y=%s, width=%s, height=%s," +
-                    "mirroredX=%b, mirroredY=%b, transform=%s]").formatted(
+                    "mirroredX=%b, mirroredY=%b, transform=%s, layer=%d]")
+                    .formatted(
                     this.pixmap,
                     this.x, this.y,
                     this.getWidth(), this.getHeight(),
                     this.isMirroredX, this.isMirroredY,
-                    this.transform);
+                    this.transform, this.layer);
         }
     }
 
@@ -289,6 +306,11 @@ public abstract class PixmapRenderer extends Renderer {
             throw new UnsupportedOperationException();
         }
 
+        @Override
+        public DrawCommand onLayer(int layer) {
+            throw new UnsupportedOperationException();
+        }
+
         @Override
         public Pixmap getPixmap() {
             return this.DRAW_COMMAND.getPixmap();
@@ -329,6 +351,11 @@ public abstract class PixmapRenderer extends Renderer {
             return this.DRAW_COMMAND.getTransform();
         }
 
+        @Override
+        public int getLayer() {
+            return this.DRAW_COMMAND.getLayer();
+        }
+
         @Override
         public boolean equals(Object obj) {
             return this == obj || this.DRAW_COMMAND.equals(obj);
@@ -345,6 +372,83 @@ public abstract class PixmapRenderer extends Renderer {
         }
     }
 
+    //Maps canvas coordinates, transformed by transform, to normalized device
+    //coordinates
+    static AffineTransform getCombined(Canvas canvas,
+                                       AffineTransform transform) {
+        final int CANVAS_WIDTH = canvas.getWidth();
+        final int CANVAS_HEIGHT = canvas.getHeight();
+        //The canvas offset must not be taken into account, as it is effectively
+        //calculated through glViewport
+        final double CENTER_X = CANVAS_WIDTH / 2.0;
+        final double CENTER_Y = CANVAS_HEIGHT / 2.0;
+
+        AffineTransform combined = AffineTransform.getScaleInstance(2.0 /
+                CANVAS_WIDTH, 2.0 / CANVAS_HEIGHT);
+        combined.translate(-CENTER_X, -CENTER_Y);
+        combined.concatenate(transform);
+
+        return combined;
+    }
+
+    //Must not be modified, our own DrawCommands hand over their transform
+    //without the defensive copy of getTransform()
+    static AffineTransform transformOf(DrawCommand drawCommand) {
+        return drawCommand instanceof AbstractDrawCommand c ?
+               c.transform :
+               drawCommand.getTransform();
+    }
+
+    //Writes the quad of pixmap in the DeferredQueue record format, i.e. its
+    //transformed corners and its texture rectangle, into quad from offset
+    static void toQuad(float[] quad, int offset, Pixmap pixmap,
+                       double x, double y, double width, double height,
+                       double m00, double m10, double m01, double m11,
+                       double m02, double m12,
+                       boolean mirroredX, boolean mirroredY) {
+        quad[offset + 8] = mirroredX ? pixmap.getMaxU() : pixmap.getMinU();
+        quad[offset + 9] = mirroredY ? pixmap.getMaxV() : pixmap.getMinV();
+        quad[offset + 10] = mirroredX ? pixmap.getMinU() : pixmap.getMaxU();
+        quad[offset + 11] = mirroredY ? pixmap.getMinV() : pixmap.getMaxV();
+
+        //The transform is separable, so each edge contributes once
+        final double RIGHT = x + width;
+        final double TOP = y + height;
+        final double LEFT_X = m00 * x + m02;
+        final double LEFT_Y = m10 * x + m12;
+        final double RIGHT_X = m00 * RIGHT + m02;
+        final double RIGHT_Y = m10 * RIGHT + m12;
+        final double BOT_X = m01 * y;
+        final double BOT_Y = m11 * y;
+        final double TOP_X = m01 * TOP;
+        final double TOP_Y = m11 * TOP;
+        //bot-left
+        quad[offset] = (float) (LEFT_X + BOT_X);
+        quad[offset + 1] = (float) (LEFT_Y + BOT_Y);
+        //top-left
+        quad[offset + 2] = (float) (LEFT_X + TOP_X);
+        quad[offset + 3] = (float) (LEFT_Y + TOP_Y);
+        //top-right
+        quad[offset + 4] = (float) (RIGHT_X + TOP_X);
+        quad[offset + 5] = (float) (RIGHT_Y + TOP_Y);
+        //bot-right
+        quad[offset + 6] = (float) (RIGHT_X + BOT_X);
+        quad[offset + 7] = (float) (RIGHT_Y + BOT_Y);
+    }
+
+    //Same as toQuad() with the properties of drawCommand
+    static void toQuad(float[] quad, int offset, DrawCommand drawCommand) {
+        final AffineTransform T = PixmapRenderer.transformOf(drawCommand);
+        PixmapRenderer.toQuad(quad, offset, drawCommand.getPixmap(),
+                              drawCommand.getX(), drawCommand.getY(),
+                              drawCommand.getWidth(), drawCommand.getHeight(),
+                              T.getScaleX(), T.getShearY(),
+                              T.getShearX(), T.getScaleY(),
+                              T.getTranslateX(), T.getTranslateY(),
+                              drawCommand.isXMirrored(),
+                              drawCommand.isYMirrored());
+    }
+
     public abstract AttachedDrawCommand drawCommand();
     public abstract void process(DrawCommand drawCommand);
 
@@ -0,0 +1,94 @@
+package moonkeki.render;
+
+import moonkeki.app.Application;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.IntBuffer;
+
+/**
+ * An OpenGL element array buffer, shared by every batch, that indexes quads of
+ * 4 vertices (top-left, top-right, bot-left, bot-right) as 2 triangles. It only
+ * grows, so it always holds the indices of the largest batch drawn so far.
+ */
+final class QuadIndexBuffer implements AutoCloseable {
+
+    static final int INDICES_PER_QUAD = 6;
+    static final int INDEX_TYPE = GL11.GL_UNSIGNED_INT;
+
+    private static QuadIndexBuffer shared; //Lazily created
+
+    private final int ID;
+    private int capacity; //in quads
+    private boolean closed;
+
+    static QuadIndexBuffer shared() {
+        if (null == QuadIndexBuffer.shared) {
+            QuadIndexBuffer.shared = new QuadIndexBuffer();
+            Application.closeOnExit(QuadIndexBuffer.shared);
+        }//end if
+
+        return QuadIndexBuffer.shared;
+    }
+
+    private QuadIndexBuffer() {
+        this.ID = GL15.glGenBuffers();
+    }
+
+    //Binds this QuadIndexBuffer, making sure it indexes at least quads
+    void bind(int quads) {
+        this.ensureOpen();
+        RenderState.bindElementArrayBuffer(this.ID);
+        if (quads <= this.capacity) {
+            return;
+        }//end if
+
+        final int CAPACITY = (int) Math.min(Math.max(quads,
+                2L * this.capacity), Integer.MAX_VALUE /
+                (4 * QuadIndexBuffer.INDICES_PER_QUAD));
+        if (CAPACITY < quads) {
+            throw new IllegalArgumentException("Argument quads is too large.");
+        }//end if
+
+        final IntBuffer INDICES = MemoryUtil.memAllocInt(CAPACITY *
+                QuadIndexBuffer.INDICES_PER_QUAD);
+        for (int i = 0; i < CAPACITY; ++i) {
+            final int FIRST = 4 * i;
+            //First triangle
+            INDICES.put(FIRST).put(FIRST + 1).put(FIRST + 2)
+            //Second triangle
+                   .put(FIRST + 1).put(FIRST + 2).put(FIRST + 3);
+        }//end for
+        INDICES.flip();
+        GL15.glBufferData(GL15.GL_ELEMENT_ARRAY_BUFFER, INDICES,
+                          GL15.GL_STATIC_DRAW);
+        MemoryUtil.memFree(INDICES);
+
+        this.capacity = CAPACITY;
+    }
+
+    boolean isClosed() {
+        return this.closed;
+    }
+
+    @Override
+    public void close() {
+        if (this.isClosed()) {
+            return;
+        }//end if
+
+        RenderState.deleteBuffer(this.ID);
+        this.closed = true;
+        if (this == QuadIndexBuffer.shared) {
+            QuadIndexBuffer.shared = null;
+        }//end if
+    }
+
+    private void ensureOpen() throws IllegalStateException {
+        if (this.isClosed()) {
+            throw new IllegalStateException("This QuadIndexBuffer is closed.");
+        }//end if
+    }
+
+}
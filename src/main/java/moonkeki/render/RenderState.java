@@ -0,0 +1,416 @@
+package moonkeki.render;
+
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL13;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL30;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Mirrors the OpenGL state that the renderers change, i.e. capabilities,
+ * viewport, scissor box and bindings, so that a call
+ * which would set a state that is already current is skipped. Every GL call
+ * site that changes this state must go through {@link RenderState}, otherwise
+ * the mirror goes out of sync.
+ *
+ * <p>The number of issued and skipped calls is counted, until {@link
+ * #resetCounters()}.
+ *
+ * <p>If the OpenGL state is changed behind the back of {@link RenderState},
+ * e.g. by a third party library or after a new context is made current, {@link
+ * #invalidate()} must be called.
+ */
+public final class RenderState {
+
+    private static final int UNKNOWN = -1;
+    private static final int TEXTURE_UNITS = 32;
+
+    private static int blend = RenderState.UNKNOWN;
+    private static int blendSource = RenderState.UNKNOWN;
+    private static int blendDestination = RenderState.UNKNOWN;
+    private static int scissorTest = RenderState.UNKNOWN;
+    private static int depthTest = RenderState.UNKNOWN;
+    private static int depthMask = RenderState.UNKNOWN;
+    private static int depthFunc = RenderState.UNKNOWN;
+    //x, y, width, height
+    private static final int[] VIEWPORT = new int[4];
+    private static final int[] SCISSOR_BOX = new int[4];
+    private static int drawFramebuffer = RenderState.UNKNOWN;
+    private static int readFramebuffer = RenderState.UNKNOWN;
+    private static int program = RenderState.UNKNOWN;
+    private static int arrayBuffer = RenderState.UNKNOWN;
+    private static int vertexArray = RenderState.UNKNOWN;
+    //Of the bound vertex array, the element array buffer binding is part of
+    //the vertex array object state
+    private static int elementArrayBuffer = RenderState.UNKNOWN;
+    //Of the vertex arrays that aren't bound
+    private static final Map<Integer, Integer> ELEMENT_ARRAY_BUFFERS =
+            new HashMap<>();
+    private static int activeTextureUnit = RenderState.UNKNOWN;
+    private static final int[] TEXTURES = new int[RenderState.TEXTURE_UNITS];
+    private static long issuedCount;
+    private static long skippedCount;
+
+    static {
+        RenderState.invalidate();
+    }
+
+    private RenderState() {}
+
+    //Forgets all the mirrored state, so the next calls are issued
+    public static void invalidate() {
+        RenderState.blend = RenderState.UNKNOWN;
+        RenderState.blendSource = RenderState.UNKNOWN;
+        RenderState.blendDestination = RenderState.UNKNOWN;
+        RenderState.scissorTest = RenderState.UNKNOWN;
+        RenderState.depthTest = RenderState.UNKNOWN;
+        RenderState.depthMask = RenderState.UNKNOWN;
+        RenderState.depthFunc = RenderState.UNKNOWN;
+        Arrays.fill(RenderState.VIEWPORT, RenderState.UNKNOWN);
+        Arrays.fill(RenderState.SCISSOR_BOX, RenderState.UNKNOWN);
+        RenderState.drawFramebuffer = RenderState.UNKNOWN;
+        RenderState.readFramebuffer = RenderState.UNKNOWN;
+        RenderState.program = RenderState.UNKNOWN;
+        RenderState.arrayBuffer = RenderState.UNKNOWN;
+        RenderState.vertexArray = RenderState.UNKNOWN;
+        RenderState.elementArrayBuffer = RenderState.UNKNOWN;
+        RenderState.ELEMENT_ARRAY_BUFFERS.clear();
+        RenderState.activeTextureUnit = RenderState.UNKNOWN;
+        Arrays.fill(RenderState.TEXTURES, RenderState.UNKNOWN);
+    }
+
+    public static void enableBlend() {
+        RenderState.setBlend(true);
+    }
+
+    public static void disableBlend() {
+        RenderState.setBlend(false);
+    }
+
+    public static void blendFunc(int source, int destination) {
+        if (RenderState.blendSource == source &&
+            RenderState.blendDestination == destination) {
+            ++RenderState.skippedCount;
+            return;
+        }//end if
+
+        GL11.glBlendFunc(source, destination);
+        RenderState.blendSource = source;
+        RenderState.blendDestination = destination;
+        ++RenderState.issuedCount;
+    }
+
+    //The number of GL calls that were issued, since the last resetCounters()
+    public static long issuedCount() {
+        return RenderState.issuedCount;
+    }
+
+    //The number of GL calls that were skipped as redundant, since the last
+    //resetCounters()
+    public static long skippedCount() {
+        return RenderState.skippedCount;
+    }
+
+    public static void resetCounters() {
+        RenderState.issuedCount = 0L;
+        RenderState.skippedCount = 0L;
+    }
+
+    static void enableScissorTest() {
+        if (1 == RenderState.scissorTest) {
+            ++RenderState.skippedCount;
+            return;
+        }//end if
+
+        GL11.glEnable(GL11.GL_SCISSOR_TEST);
+        RenderState.scissorTest = 1;
+        ++RenderState.issuedCount;
+    }
+
+    static void enableDepthTest() {
+        RenderState.setDepthTest(true);
+    }
+
+    static void disableDepthTest() {
+        RenderState.setDepthTest(false);
+    }
+
+    //Whether the depth buffer is written to
+    static void depthMask(boolean enabled) {
+        final int STATE = enabled ? 1 : 0;
+        if (RenderState.depthMask == STATE) {
+            ++RenderState.skippedCount;
+            return;
+        }//end if
+
+        GL11.glDepthMask(enabled);
+        RenderState.depthMask = STATE;
+        ++RenderState.issuedCount;
+    }
+
+    static void depthFunc(int function) {
+        if (RenderState.depthFunc == function) {
+            ++RenderState.skippedCount;
+            return;
+        }//end if
+
+        GL11.glDepthFunc(function);
+        RenderState.depthFunc = function;
+        ++RenderState.issuedCount;
+    }
+
+    static void viewport(int x, int y, int width, int height) {
+        if (RenderState.set(RenderState.VIEWPORT, x, y, width, height)) {
+            GL11.glViewport(x, y, width, height);
+        }//end if
+    }
+
+    static void scissor(int x, int y, int width, int height) {
+        if (RenderState.set(RenderState.SCISSOR_BOX, x, y, width, height)) {
+            GL11.glScissor(x, y, width, height);
+        }//end if
+    }
+
+    //Binds framebufferId for both drawing and reading
+    static void bindFramebuffer(int framebufferId) {
+        if (RenderState.drawFramebuffer == framebufferId &&
+            RenderState.readFramebuffer == framebufferId) {
+            ++RenderState.skippedCount;
+            return;
+        }//end if
+
+        GL30.glBindFramebuffer(GL30.GL_FRAMEBUFFER, framebufferId);
+        RenderState.drawFramebuffer = framebufferId;
+        RenderState.readFramebuffer = framebufferId;
+        ++RenderState.issuedCount;
+    }
+
+    static void bindReadFramebuffer(int framebufferId) {
+        if (RenderState.readFramebuffer == framebufferId) {
+            ++RenderState.skippedCount;
+            return;
+        }//end if
+
+        GL30.glBindFramebuffer(GL30.GL_READ_FRAMEBUFFER, framebufferId);
+        RenderState.readFramebuffer = framebufferId;
+        ++RenderState.issuedCount;
+    }
+
+    static void useProgram(int programId) {
+        if (RenderState.program == programId) {
+            ++RenderState.skippedCount;
+            return;
+        }//end if
+
+        GL20.glUseProgram(programId);
+        RenderState.program = programId;
+        ++RenderState.issuedCount;
+    }
+
+    static void bindArrayBuffer(int bufferId) {
+        if (RenderState.arrayBuffer == bufferId) {
+            ++RenderState.skippedCount;
+            return;
+        }//end if
+
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, bufferId);
+        RenderState.arrayBuffer = bufferId;
+        ++RenderState.issuedCount;
+    }
+
+    //UNKNOWN if not bound through RenderState since the last invalidate()
+    static int arrayBuffer() {
+        return RenderState.arrayBuffer;
+    }
+
+    static void bindElementArrayBuffer(int bufferId) {
+        if (RenderState.elementArrayBuffer == bufferId) {
+            ++RenderState.skippedCount;
+            return;
+        }//end if
+
+        GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, bufferId);
+        RenderState.elementArrayBuffer = bufferId;
+        ++RenderState.issuedCount;
+    }
+
+    //unit is relative to GL_TEXTURE0
+    static void activeTexture(int unit) {
+        if (RenderState.activeTextureUnit == unit) {
+            ++RenderState.skippedCount;
+            return;
+        }//end if
+
+        GL13.glActiveTexture(GL13.GL_TEXTURE0 + unit);
+        RenderState.activeTextureUnit = unit;
+        ++RenderState.issuedCount;
+    }
+
+    //Binds textureId to the active texture unit
+    static void bindTexture(int textureId) {
+        if (RenderState.UNKNOWN == RenderState.activeTextureUnit) {
+            RenderState.activeTexture(0);
+        }//end if
+
+        final int UNIT = RenderState.activeTextureUnit;
+        if (UNIT < RenderState.TEXTURE_UNITS &&
+            RenderState.TEXTURES[UNIT] == textureId) {
+            ++RenderState.skippedCount;
+            return;
+        }//end if
+
+        GL11.glBindTexture(GL11.GL_TEXTURE_2D, textureId);
+        if (UNIT < RenderState.TEXTURE_UNITS) {
+            RenderState.TEXTURES[UNIT] = textureId;
+        }//end if
+        ++RenderState.issuedCount;
+    }
+
+    static void bindTexture(int unit, int textureId) {
+        if (unit < RenderState.TEXTURE_UNITS &&
+            RenderState.TEXTURES[unit] == textureId) {
+            ++RenderState.skippedCount;
+            return;
+        }//end if
+
+        RenderState.activeTexture(unit);
+        RenderState.bindTexture(textureId);
+    }
+
+    //Also restores the mirrored element array buffer binding of vertexArrayId
+    static void bindVertexArray(int vertexArrayId) {
+        if (RenderState.vertexArray == vertexArrayId) {
+            ++RenderState.skippedCount;
+            return;
+        }//end if
+
+        GL30.glBindVertexArray(vertexArrayId);
+        if (RenderState.vertexArray != RenderState.UNKNOWN) {
+            RenderState.ELEMENT_ARRAY_BUFFERS.put(RenderState.vertexArray,
+                    RenderState.elementArrayBuffer);
+        }//end if
+        final Integer ELEMENT_ARRAY_BUFFER = RenderState.ELEMENT_ARRAY_BUFFERS
+                .remove(vertexArrayId);
+        RenderState.elementArrayBuffer = null == ELEMENT_ARRAY_BUFFER ?
+                RenderState.UNKNOWN : ELEMENT_ARRAY_BUFFER;
+        RenderState.vertexArray = vertexArrayId;
+        ++RenderState.issuedCount;
+    }
+
+    //The deleters forget the deleted object, as its id may be reused by a new
+    //object, which must not be taken for bound
+    static void deleteBuffer(int bufferId) {
+        GL15.glDeleteBuffers(bufferId);
+        if (RenderState.arrayBuffer == bufferId) {
+            RenderState.arrayBuffer = 0;
+        }//end if
+
+        if (RenderState.elementArrayBuffer == bufferId) {
+            RenderState.elementArrayBuffer = 0;
+        }//end if
+
+        //Vertex arrays that aren't bound keep referencing the deleted buffer
+        RenderState.ELEMENT_ARRAY_BUFFERS.values().removeIf(
+                b -> b == bufferId);
+        VertexArrayCache.evictBuffer(bufferId);
+    }
+
+    static void deleteTexture(int textureId) {
+        GL11.glDeleteTextures(textureId);
+        for (int i = 0; i < RenderState.TEXTURE_UNITS; ++i) {
+            if (RenderState.TEXTURES[i] == textureId) {
+                RenderState.TEXTURES[i] = 0;
+            }//end if
+        }//end for
+    }
+
+    //Counted by RenderStatistics
+    static int genFramebuffer() {
+        RenderStatistics.countFramebuffer();
+        return GL30.glGenFramebuffers();
+    }
+
+    static void deleteFramebuffer(int framebufferId) {
+        GL30.glDeleteFramebuffers(framebufferId);
+        if (RenderState.drawFramebuffer == framebufferId) {
+            RenderState.drawFramebuffer = 0;
+        }//end if
+
+        if (RenderState.readFramebuffer == framebufferId) {
+            RenderState.readFramebuffer = 0;
+        }//end if
+    }
+
+    static void deleteProgram(int programId) {
+        GL20.glDeleteProgram(programId);
+        //A program in use is only flagged for deletion and stays current
+        if (RenderState.program == programId) {
+            RenderState.program = RenderState.UNKNOWN;
+        }//end if
+        VertexArrayCache.evictProgram(programId);
+    }
+
+    static void deleteVertexArray(int vertexArrayId) {
+        GL30.glDeleteVertexArrays(vertexArrayId);
+        if (RenderState.vertexArray == vertexArrayId) {
+            RenderState.vertexArray = 0;
+            RenderState.elementArrayBuffer = RenderState.ELEMENT_ARRAY_BUFFERS
+                    .getOrDefault(0, RenderState.UNKNOWN);
+        }//end if
+        RenderState.ELEMENT_ARRAY_BUFFERS.remove(vertexArrayId);
+    }
+
+    private static void setBlend(boolean enabled) {
+        final int STATE = enabled ? 1 : 0;
+        if (RenderState.blend == STATE) {
+            ++RenderState.skippedCount;
+            return;
+        }//end if
+
+        if (enabled) {
+            GL11.glEnable(GL11.GL_BLEND);
+        } else {
+            GL11.glDisable(GL11.GL_BLEND);
+        }//end if
+        RenderState.blend = STATE;
+        ++RenderState.issuedCount;
+    }
+
+    private static void setDepthTest(boolean enabled) {
+        final int STATE = enabled ? 1 : 0;
+        if (RenderState.depthTest == STATE) {
+            ++RenderState.skippedCount;
+            return;
+        }//end if
+
+        if (enabled) {
+            GL11.glEnable(GL11.GL_DEPTH_TEST);
+        } else {
+            GL11.glDisable(GL11.GL_DEPTH_TEST);
+        }//end if
+        RenderState.depthTest = STATE;
+        ++RenderState.issuedCount;
+    }
+
+    //returns whether the call must be issued
+    private static boolean set(int[] state, int x, int y, int width,
+                               int height) {
+        if (state[0] == x && state[1] == y && state[2] == width &&
+            state[3] == height) {
+            ++RenderState.skippedCount;
+            return false;
+        }//end if
+
+        state[0] = x;
+        state[1] = y;
+        state[2] = width;
+        state[3] = height;
+        ++RenderState.issuedCount;
+        return true;
+    }
+
+}
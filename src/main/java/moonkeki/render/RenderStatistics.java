@@ -0,0 +1,129 @@
+package moonkeki.render;
+
+/**
+ * Counts the work of all the renderers, per frame: the quads queued, the draw
+ * calls, the flushes by their {@link FlushCause}, the vertex bytes uploaded,
+ * the framebuffers created and the rebuilds.
+ *
+ * <p>The counters are accumulated during a frame, and the getters return those
+ * of the last complete frame. {@link #endFrame()} is called once per frame by
+ * the {@link moonkeki.app.Application}, after the buffers are swapped.
+ */
+public final class RenderStatistics {
+
+    //Why a batch was drawn before more quads could be written to it
+    public enum FlushCause {
+        //All the texture slots were taken by other textures
+        TEXTURE_SWITCH,
+        //The batch, or the queue of a deferred renderer, was full
+        BUFFER_FULL,
+        //The next quads are of another Material
+        MATERIAL_SWITCH,
+        //flush() was called
+        EXPLICIT
+    }
+
+    private static final FlushCause[] FLUSH_CAUSES = FlushCause.values();
+
+    //The counters of the current frame, and then of the last complete one
+    private static long quadsQueued;
+    private static long drawCalls;
+    private static final long[] FLUSHES = new long[
+            RenderStatistics.FLUSH_CAUSES.length];
+    private static long bytesUploaded;
+    private static long framebuffersCreated;
+    private static long rebuilds;
+    private static long lastQuadsQueued;
+    private static long lastDrawCalls;
+    private static final long[] LAST_FLUSHES = new long[
+            RenderStatistics.FLUSH_CAUSES.length];
+    private static long lastBytesUploaded;
+    private static long lastFramebuffersCreated;
+    private static long lastRebuilds;
+
+    private RenderStatistics() {}
+
+    public static long quadsQueued() {
+        return RenderStatistics.lastQuadsQueued;
+    }
+
+    public static long drawCalls() {
+        return RenderStatistics.lastDrawCalls;
+    }
+
+    public static long flushes(FlushCause cause) {
+        return RenderStatistics.LAST_FLUSHES[cause.ordinal()];
+    }
+
+    //Of every cause
+    public static long flushes() {
+        long flushes = 0L;
+        for (long f : RenderStatistics.LAST_FLUSHES) {
+            flushes += f;
+        }//end for
+
+        return flushes;
+    }
+
+    //Of vertex and instance data
+    public static long bytesUploaded() {
+        return RenderStatistics.lastBytesUploaded;
+    }
+
+    public static long framebuffersCreated() {
+        return RenderStatistics.lastFramebuffersCreated;
+    }
+
+    //Of the rebuild() calls, those that built a new renderer
+    public static long rebuilds() {
+        return RenderStatistics.lastRebuilds;
+    }
+
+    //Makes the counters of the current frame the ones of the last complete
+    //frame, and starts counting from 0
+    public static void endFrame() {
+        RenderStatistics.lastQuadsQueued = RenderStatistics.quadsQueued;
+        RenderStatistics.lastDrawCalls = RenderStatistics.drawCalls;
+        System.arraycopy(RenderStatistics.FLUSHES, 0,
+                         RenderStatistics.LAST_FLUSHES, 0,
+                         RenderStatistics.FLUSHES.length);
+        RenderStatistics.lastBytesUploaded = RenderStatistics.bytesUploaded;
+        RenderStatistics.lastFramebuffersCreated =
+                RenderStatistics.framebuffersCreated;
+        RenderStatistics.lastRebuilds = RenderStatistics.rebuilds;
+
+        RenderStatistics.quadsQueued = 0L;
+        RenderStatistics.drawCalls = 0L;
+        for (int i = 0; i < RenderStatistics.FLUSHES.length; ++i) {
+            RenderStatistics.FLUSHES[i] = 0L;
+        }//end for
+        RenderStatistics.bytesUploaded = 0L;
+        RenderStatistics.framebuffersCreated = 0L;
+        RenderStatistics.rebuilds = 0L;
+    }
+
+    static void countQuads(int count) {
+        RenderStatistics.quadsQueued += count;
+    }
+
+    static void countDrawCall() {
+        ++RenderStatistics.drawCalls;
+    }
+
+    static void countFlush(FlushCause cause) {
+        ++RenderStatistics.FLUSHES[cause.ordinal()];
+    }
+
+    static void countUpload(long bytes) {
+        RenderStatistics.bytesUploaded += bytes;
+    }
+
+    static void countFramebuffer() {
+        ++RenderStatistics.framebuffersCreated;
+    }
+
+    static void countRebuild() {
+        ++RenderStatistics.rebuilds;
+    }
+
+}
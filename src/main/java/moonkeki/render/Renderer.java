@@ -47,12 +47,20 @@ public abstract class Renderer {
      * this {@link Renderer}.
      */
     public void clearCanvas(Color color) {
-        this.setupCanvas();
-        GL11.glClearColor(color.getRed() / 255.0f,
-                          color.getGreen() / 255.0f,
-                          color.getBlue() / 255.0f,
-                          color.getAlpha() / 255.0f);
-        GL11.glClear(GL11.GL_COLOR_BUFFER_BIT);
+        if (FrameCapture.isRecording()) {
+            FrameCapture.recordClear(this.getCanvas(), color);
+        }//end if
+        GpuTimer.begin("Renderer.clearCanvas");
+        try {
+            this.setupCanvas();
+            GL11.glClearColor(color.getRed() / 255.0f,
+                              color.getGreen() / 255.0f,
+                              color.getBlue() / 255.0f,
+                              color.getAlpha() / 255.0f);
+            GL11.glClear(GL11.GL_COLOR_BUFFER_BIT);
+        } finally {
+            GpuTimer.end();
+        }
     }
 
     /**
@@ -56,21 +56,127 @@ public abstract sealed class Shader implements AutoCloseable {
 
                 in vec2 position;
                 in vec2 v_texCoord;
+                in float v_depth; //0 unless the BatchRenderer is depth tested
                 out vec2 texCoord;
                 uniform mat3 transformMatrix;
 
                 void main() {
                     texCoord = v_texCoord;
-                    gl_Position = vec4(transformMatrix * vec3(position, 1.0f), 
-                            1.0f);
+                    gl_Position = vec4((transformMatrix *
+                            vec3(position, 1.0f)).xy, v_depth, 1.0f);
                 }
                 """
         );
         public static final Vertex DEFAULT = new Unclosable(
                 Vertex.DEFAULT_CLOSABLE);
+        private static final Vertex MULTI_TEXTURE_CLOSABLE = Vertex.ofSource(
+                """
+                #version 330 core
+
+                in vec2 position;
+                in vec2 v_texCoord;
+                in float v_texIndex;
+                in float v_depth;
+                out vec2 texCoord;
+                flat out int texIndex;
+                uniform mat3 transformMatrix;
+
+                void main() {
+                    texCoord = v_texCoord;
+                    texIndex = int(v_texIndex);
+                    gl_Position = vec4((transformMatrix *
+                            vec3(position, 1.0f)).xy, v_depth, 1.0f);
+                }
+                """
+        );
+        //Passes the per-vertex texture index through to the fragment shader
+        public static final Vertex MULTI_TEXTURE = new Unclosable(
+                Vertex.MULTI_TEXTURE_CLOSABLE);
+        private static final Vertex INSTANCED_CLOSABLE = Vertex.ofSource(
+                """
+                #version 330 core
+
+                in vec4 i_rect;    //x, y, width, height
+                in vec4 i_texRect; //minU, minV, maxU, maxV
+                in vec3 i_row0;    //m00, m01, m02
+                in vec3 i_row1;    //m10, m11, m12
+                out vec2 texCoord;
+                uniform mat3 transformMatrix;
+
+                void main() {
+                    //As a triangle strip: bot-left, bot-right, top-left,
+                    //top-right
+                    vec2 corner = vec2(gl_VertexID & 1, gl_VertexID >> 1);
+                    vec3 local = vec3(i_rect.xy + corner * i_rect.zw, 1.0f);
+                    vec2 world = vec2(dot(i_row0, local), dot(i_row1, local));
+                    texCoord = mix(i_texRect.xy, i_texRect.zw, corner);
+                    gl_Position = vec4(transformMatrix * vec3(world, 1.0f),
+                            1.0f);
+                }
+                """
+        );
+        //Expands the corners of a per-instance quad on the GPU
+        public static final Vertex INSTANCED = new Unclosable(
+                Vertex.INSTANCED_CLOSABLE);
+        private static final Vertex TINTED_CLOSABLE = Vertex.ofSource(
+                """
+                #version 330 core
+
+                in vec2 position;
+                in vec2 v_texCoord;
+                in vec4 v_color;
+                in float v_depth;
+                out vec2 texCoord;
+                out vec4 color;
+                uniform mat3 transformMatrix;
+
+                void main() {
+                    texCoord = v_texCoord;
+                    color = v_color;
+                    gl_Position = vec4((transformMatrix *
+                            vec3(position, 1.0f)).xy, v_depth, 1.0f);
+                }
+                """
+        );
+        //Passes the per-vertex color through to the fragment shader
+        public static final Vertex TINTED = new Unclosable(
+                Vertex.TINTED_CLOSABLE);
+        private static final Vertex TINTED_MULTI_TEXTURE_CLOSABLE =
+                Vertex.ofSource(
+                """
+                #version 330 core
+
+                in vec2 position;
+                in vec2 v_texCoord;
+                in vec4 v_color;
+                in float v_texIndex;
+                in float v_depth;
+                out vec2 texCoord;
+                out vec4 color;
+                flat out int texIndex;
+                uniform mat3 transformMatrix;
+
+                void main() {
+                    texCoord = v_texCoord;
+                    color = v_color;
+                    texIndex = int(v_texIndex);
+                    gl_Position = vec4((transformMatrix *
+                            vec3(position, 1.0f)).xy, v_depth, 1.0f);
+                }
+                """
+        );
+        //Passes the per-vertex color and texture index through to the
+        //fragment shader
+        public static final Vertex TINTED_MULTI_TEXTURE = new Unclosable(
+                Vertex.TINTED_MULTI_TEXTURE_CLOSABLE);
 
         static {
             Application.closeOnExit(Shader.Vertex.DEFAULT_CLOSABLE);
+            Application.closeOnExit(Shader.Vertex.MULTI_TEXTURE_CLOSABLE);
+            Application.closeOnExit(Shader.Vertex.INSTANCED_CLOSABLE);
+            Application.closeOnExit(Shader.Vertex.TINTED_CLOSABLE);
+            Application.closeOnExit(
+                    Shader.Vertex.TINTED_MULTI_TEXTURE_CLOSABLE);
         }
 
         public static Vertex fromPath(String path) throws IOException {
@@ -151,9 +257,45 @@ public abstract sealed class Shader implements AutoCloseable {
         );
         public static final Fragment DEFAULT = new Unclosable(
                 Fragment.DEFAULT_CLOSABLE);
+        //The number of sampler2D's in the samplers array of MULTI_TEXTURE
+        public static final int TEXTURE_SLOTS = 16;
+        private static final Fragment MULTI_TEXTURE_CLOSABLE =
+                Fragment.ofSource(Fragment.multiTextureSource(
+                        Fragment.TEXTURE_SLOTS, false));
+        //Samples from samplers[texIndex]
+        public static final Fragment MULTI_TEXTURE = new Unclosable(
+                Fragment.MULTI_TEXTURE_CLOSABLE);
+        private static final Fragment TINTED_CLOSABLE = Fragment.ofSource(
+                """
+                #version 330 core
+
+                in vec2 texCoord;
+                in vec4 color;
+                out vec4 fragColor;
+                uniform sampler2D sampler;
+
+                void main() {
+                    fragColor = texture(sampler, texCoord) * color;
+                }
+                """
+        );
+        //Multiplies the texture color by the per-vertex color
+        public static final Fragment TINTED = new Unclosable(
+                Fragment.TINTED_CLOSABLE);
+        private static final Fragment TINTED_MULTI_TEXTURE_CLOSABLE =
+                Fragment.ofSource(Fragment.multiTextureSource(
+                        Fragment.TEXTURE_SLOTS, true));
+        //Multiplies the color sampled from samplers[texIndex] by the
+        //per-vertex color
+        public static final Fragment TINTED_MULTI_TEXTURE = new Unclosable(
+                Fragment.TINTED_MULTI_TEXTURE_CLOSABLE);
 
         static {
             Application.closeOnExit(Shader.Fragment.DEFAULT_CLOSABLE);
+            Application.closeOnExit(Shader.Fragment.MULTI_TEXTURE_CLOSABLE);
+            Application.closeOnExit(Shader.Fragment.TINTED_CLOSABLE);
+            Application.closeOnExit(
+                    Shader.Fragment.TINTED_MULTI_TEXTURE_CLOSABLE);
         }
 
         public static Fragment fromPath(String path) throws IOException {
@@ -165,6 +307,39 @@ public abstract sealed class Shader implements AutoCloseable {
                     source));
         }
 
+        //GLSL 330 can index sampler arrays only with constant expressions,
+        //so every slot gets its own case
+        //tinted multiplies the sampled color by the per-vertex color
+        private static String multiTextureSource(int slots, boolean tinted) {
+            final StringBuilder CASES = new StringBuilder();
+            for (int i = 0; i < slots; ++i) {
+                CASES.append("""
+                                case %d:
+                                    fragColor = texture(samplers[%d], texCoord);
+                                    break;
+                        """.formatted(i, i));
+            }//end for
+
+            return """
+                   #version 330 core
+
+                   in vec2 texCoord;
+                   flat in int texIndex;
+                   %s
+                   out vec4 fragColor;
+                   uniform sampler2D samplers[%d];
+
+                   void main() {
+                       switch (texIndex) {
+                   %s        default:
+                               fragColor = vec4(0.0f);
+                       }
+                       %s
+                   }
+                   """.formatted(tinted ? "in vec4 color;" : "", slots, CASES,
+                                 tinted ? "fragColor *= color;" : "");
+        }
+
         //Only for wrapper Shader's'
         private Fragment() {}
 
@@ -3,8 +3,11 @@ package moonkeki.render;
 import moonkeki.app.Application;
 import org.lwjgl.opengl.GL11;
 import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL31;
+import org.lwjgl.system.MemoryUtil;
 
 import java.awt.geom.AffineTransform;
+import java.nio.IntBuffer;
 import java.util.*;
 import java.util.stream.IntStream;
 
@@ -52,6 +55,11 @@ public sealed class ShaderProgram implements AutoCloseable {
             PROGRAM.setUniformMatrix(name, value);
         }
 
+        @Override
+        public void setUniformBlock(String blockName, int bindingPoint) {
+            PROGRAM.setUniformBlock(blockName, bindingPoint);
+        }
+
         @Override
         public boolean isClosed() {
             return PROGRAM.isClosed();
@@ -78,8 +86,18 @@ public sealed class ShaderProgram implements AutoCloseable {
         }
 
         @Override
-        public void use() {
-            PROGRAM.use();
+        void use(VertexLayout layout) {
+            PROGRAM.use(layout);
+        }
+
+        @Override
+        void saveUniform(String name) {
+            PROGRAM.saveUniform(name);
+        }
+
+        @Override
+        void restoreUniforms() {
+            PROGRAM.restoreUniforms();
         }
 
         @Override
@@ -88,18 +106,134 @@ public sealed class ShaderProgram implements AutoCloseable {
         }
     }
 
+    //The CPU-side value of a uniform variable
+    private static final class Uniform {
+        static final int INTS = 0;
+        static final int FLOATS = 1;
+        static final int MATRIX3 = 2;
+
+        final int LOCATION;
+        final int KIND;
+        final int[] INTS_VALUE;
+        final float[] FLOATS_VALUE;
+        boolean dirty;
+
+        Uniform(int location, int kind, int length) {
+            this.LOCATION = location;
+            this.KIND = kind;
+            this.INTS_VALUE = Uniform.INTS == kind ? new int[length] : null;
+            this.FLOATS_VALUE = Uniform.INTS == kind ? null : new float[length];
+        }
+
+        int length() {
+            return Uniform.INTS == this.KIND ? this.INTS_VALUE.length :
+                                               this.FLOATS_VALUE.length;
+        }
+
+        //Not dirty
+        Uniform copy() {
+            final Uniform COPY = new Uniform(this.LOCATION, this.KIND,
+                                             this.length());
+            COPY.setValue(this);
+            return COPY;
+        }
+
+        //Of the same kind and length. Returns whether the value changed.
+        boolean setValue(Uniform other) {
+            if (Uniform.INTS == this.KIND) {
+                if (Arrays.equals(this.INTS_VALUE, other.INTS_VALUE)) {
+                    return false;
+                }//end if
+
+                System.arraycopy(other.INTS_VALUE, 0, this.INTS_VALUE, 0,
+                                 this.INTS_VALUE.length);
+            } else {
+                if (Arrays.equals(this.FLOATS_VALUE, other.FLOATS_VALUE)) {
+                    return false;
+                }//end if
+
+                System.arraycopy(other.FLOATS_VALUE, 0, this.FLOATS_VALUE, 0,
+                                 this.FLOATS_VALUE.length);
+            }//end if
+
+            return true;
+        }
+
+        //To the initial value of a linked program. Returns whether the value
+        //changed.
+        boolean setZero() {
+            return this.setValue(new Uniform(this.LOCATION, this.KIND,
+                                             this.length()));
+        }
+
+        void apply() {
+            switch (this.KIND) {
+                case Uniform.INTS -> {
+                    if (1 == this.INTS_VALUE.length) {
+                        GL20.glUniform1i(this.LOCATION, this.INTS_VALUE[0]);
+                    } else {
+                        GL20.glUniform1iv(this.LOCATION, this.INTS_VALUE);
+                    }//end if
+                }
+                case Uniform.FLOATS -> {
+                    if (1 == this.FLOATS_VALUE.length) {
+                        GL20.glUniform1f(this.LOCATION, this.FLOATS_VALUE[0]);
+                    } else {
+                        GL20.glUniform1fv(this.LOCATION, this.FLOATS_VALUE);
+                    }//end if
+                }
+                default -> GL20.glUniformMatrix3fv(this.LOCATION, false,
+                                                   this.FLOATS_VALUE);
+            }
+        }
+    }
+
     private static final ShaderProgram DEFAULT_CLOSABLE = new ShaderProgram(
             Shader.Vertex.DEFAULT, Shader.Fragment.DEFAULT);
     public static final ShaderProgram DEFAULT = new Unclosable(
             ShaderProgram.DEFAULT_CLOSABLE);
-    private static final int UNIFORM_CACHE_SIZE = 50;
+    private static final ShaderProgram MULTI_TEXTURE_CLOSABLE =
+            new ShaderProgram(Shader.Vertex.MULTI_TEXTURE,
+                              Shader.Fragment.MULTI_TEXTURE);
+    //Samples from one of the Shader.Fragment.TEXTURE_SLOTS textures of the
+    //samplers array, based on the per-vertex texture index
+    public static final ShaderProgram MULTI_TEXTURE = new Unclosable(
+            ShaderProgram.MULTI_TEXTURE_CLOSABLE);
+    private static final ShaderProgram INSTANCED_CLOSABLE = new ShaderProgram(
+            Shader.Vertex.INSTANCED, Shader.Fragment.DEFAULT);
+    //The default ShaderProgram of InstancedRenderer
+    public static final ShaderProgram INSTANCED = new Unclosable(
+            ShaderProgram.INSTANCED_CLOSABLE);
+    private static final ShaderProgram TINTED_CLOSABLE = new ShaderProgram(
+            Shader.Vertex.TINTED, Shader.Fragment.TINTED);
+    //Multiplies the texture color by the v_color vertex attribute
+    public static final ShaderProgram TINTED = new Unclosable(
+            ShaderProgram.TINTED_CLOSABLE);
+    private static final ShaderProgram TINTED_MULTI_TEXTURE_CLOSABLE =
+            new ShaderProgram(Shader.Vertex.TINTED_MULTI_TEXTURE,
+                              Shader.Fragment.TINTED_MULTI_TEXTURE);
+    //MULTI_TEXTURE, multiplied by the v_color vertex attribute
+    public static final ShaderProgram TINTED_MULTI_TEXTURE = new Unclosable(
+            ShaderProgram.TINTED_MULTI_TEXTURE_CLOSABLE);
     private final int ID;
-    private final Map<String, Integer> UNIFORM_LOCATIONS = new LinkedHashMap<>(
-            UNIFORM_CACHE_SIZE, 0.75f, true);
+    //The uniform variables are staged here, and only sent to the GL when this
+    //ShaderProgram is next used
+    private final Map<String, Uniform> UNIFORMS = new HashMap<>();
+    private final Map<String, Integer> UNIFORM_BLOCK_BINDINGS =
+            new HashMap<>();
+    //Resolved when linked
+    private final Map<String, Integer> ATTRIBUTE_LOCATIONS = new HashMap<>();
+    private final List<Uniform> DIRTY_UNIFORMS = new ArrayList<>();
+    //name -> the value a Material replaced, null if it was never set
+    private final Map<String, Uniform> SAVED_UNIFORMS = new HashMap<>();
     private boolean closed;
 
     static {
         Application.closeOnExit(ShaderProgram.DEFAULT_CLOSABLE);
+        Application.closeOnExit(ShaderProgram.MULTI_TEXTURE_CLOSABLE);
+        Application.closeOnExit(ShaderProgram.INSTANCED_CLOSABLE);
+        Application.closeOnExit(ShaderProgram.TINTED_CLOSABLE);
+        Application.closeOnExit(ShaderProgram.TINTED_MULTI_TEXTURE_CLOSABLE);
     }
 
     //Only for wrapper ShaderProgram's'
@@ -146,21 +280,41 @@ public sealed class ShaderProgram implements AutoCloseable {
             throw new RuntimeException(GL20.glGetProgramInfoLog(this.ID));
         }//end if
         shaders.forEach(s -> GL20.glDetachShader(this.ID, s.getId()));
+
+        final int ACTIVE_ATTRIBUTES = GL20.glGetProgrami(this.ID,
+                GL20.GL_ACTIVE_ATTRIBUTES);
+        final IntBuffer SIZE = MemoryUtil.memAllocInt(1);
+        final IntBuffer TYPE = MemoryUtil.memAllocInt(1);
+        for (int i = 0; i < ACTIVE_ATTRIBUTES; ++i) {
+            final String NAME = GL20.glGetActiveAttrib(this.ID, i, SIZE, TYPE);
+            final int LOCATION = GL20.glGetAttribLocation(this.ID, NAME);
+            //Built-in attributes, like gl_VertexID, have no location
+            if (LOCATION != -1) {
+                this.ATTRIBUTE_LOCATIONS.put(NAME, LOCATION);
+            }//end if
+        }//end for
+        MemoryUtil.memFree(SIZE);
+        MemoryUtil.memFree(TYPE);
     }
 
     public void setUniformVariable(String name, boolean value) {
-        this.runOnThisProgram(() -> GL20.glUniform1i(this.getUniformLocation(
-                name), value ? 1 : 0));
+        this.setUniformVariable(name, value ? 1 : 0);
     }
 
     public void setUniformVariable(String name, int value) {
-        this.runOnThisProgram(() -> GL20.glUniform1i(this.getUniformLocation(
-                name), value));
+        final Uniform UNIFORM = this.stage(name, Uniform.INTS, 1);
+        if (UNIFORM.INTS_VALUE[0] != value) {
+            UNIFORM.INTS_VALUE[0] = value;
+            this.markDirty(UNIFORM);
+        }//end if
     }
 
     public void setUniformVariable(String name, float value) {
-        this.runOnThisProgram(() -> GL20.glUniform1f(this.getUniformLocation(
-                name), value));
+        final Uniform UNIFORM = this.stage(name, Uniform.FLOATS, 1);
+        if (Float.compare(UNIFORM.FLOATS_VALUE[0], value) != 0) {
+            UNIFORM.FLOATS_VALUE[0] = value;
+            this.markDirty(UNIFORM);
+        }//end if
     }
 
     public void setUniformArray(String name, boolean[] values) {
@@ -175,8 +329,11 @@ public sealed class ShaderProgram implements AutoCloseable {
                     "have a length of 0.");
         }//end if
 
-        this.runOnThisProgram(() -> GL20.glUniform1iv(this.getUniformLocation(
-                name), values));
+        final Uniform UNIFORM = this.stage(name, Uniform.INTS, values.length);
+        if (!Arrays.equals(UNIFORM.INTS_VALUE, values)) {
+            System.arraycopy(values, 0, UNIFORM.INTS_VALUE, 0, values.length);
+            this.markDirty(UNIFORM);
+        }//end if
     }
 
     public void setUniformArray(String name, float[] values) {
@@ -185,26 +342,61 @@ public sealed class ShaderProgram implements AutoCloseable {
                     "have a length of 0.");
         }//end if
 
-        this.runOnThisProgram(() -> GL20.glUniform1fv(this.getUniformLocation(
-                name), values));
+        final Uniform UNIFORM = this.stage(name, Uniform.FLOATS, values.length);
+        if (!Arrays.equals(UNIFORM.FLOATS_VALUE, values)) {
+            System.arraycopy(values, 0, UNIFORM.FLOATS_VALUE, 0,
+                             values.length);
+            this.markDirty(UNIFORM);
+        }//end if
     }
 
     public void setUniformMatrix(String name, AffineTransform value) {
-        final int UNIFORM_LOCATION = this.getUniformLocation(name);
-
-        float[] data = new float[3 * 3];
-        double[] matrix = new double[6];
-        value.getMatrix(matrix);
-        data[0] = (float) matrix[0];
-        data[1] = (float) matrix[1];
-        data[3] = (float) matrix[2];
-        data[4] = (float) matrix[3];
-        data[6] = (float) matrix[4];
-        data[7] = (float) matrix[5];
-        data[8] = 1.0f;
-
-        this.runOnThisProgram(() -> GL20.glUniformMatrix3fv(UNIFORM_LOCATION,
-                false, data));
+        final Uniform UNIFORM = this.stage(name, Uniform.MATRIX3, 3 * 3);
+        final float[] DATA = UNIFORM.FLOATS_VALUE;
+        final float M00 = (float) value.getScaleX();
+        final float M10 = (float) value.getShearY();
+        final float M01 = (float) value.getShearX();
+        final float M11 = (float) value.getScaleY();
+        final float M02 = (float) value.getTranslateX();
+        final float M12 = (float) value.getTranslateY();
+        if (DATA[0] == M00 && DATA[1] == M10 && DATA[3] == M01 &&
+            DATA[4] == M11 && DATA[6] == M02 && DATA[7] == M12 &&
+            DATA[8] == 1.0f) {
+            return;
+        }//end if
+
+        DATA[0] = M00;
+        DATA[1] = M10;
+        DATA[3] = M01;
+        DATA[4] = M11;
+        DATA[6] = M02;
+        DATA[7] = M12;
+        DATA[8] = 1.0f;
+        this.markDirty(UNIFORM);
+    }
+
+    //Binds the uniform block blockName of this ShaderProgram to bindingPoint,
+    //where a UniformBuffer can be bound with UniformBuffer.bind
+    public void setUniformBlock(String blockName, int bindingPoint) {
+        if (bindingPoint < 0) {
+            throw new IllegalArgumentException("Argument bindingPoint must be " +
+                    "non-negative.");
+        }//end if
+
+        final Integer BINDING_POINT = this.UNIFORM_BLOCK_BINDINGS.get(
+                blockName);
+        if (BINDING_POINT != null && BINDING_POINT == bindingPoint) {
+            return;
+        }//end if
+
+        final int INDEX = GL31.glGetUniformBlockIndex(this.getId(), blockName);
+        if (GL31.GL_INVALID_INDEX == INDEX) {
+            throw new IllegalArgumentException("Argument blockName does not " +
+                    "correspond to a uniform block in this ShaderProgram.");
+        }//end if
+
+        GL31.glUniformBlockBinding(this.getId(), INDEX, bindingPoint);
+        this.UNIFORM_BLOCK_BINDINGS.put(blockName, bindingPoint);
     }
 
     public boolean isClosed() {
@@ -217,7 +409,7 @@ public sealed class ShaderProgram implements AutoCloseable {
             return;
         }//end if
 
-        GL20.glDeleteProgram(this.getId());
+        RenderState.deleteProgram(this.getId());
         this.closed = true;
     }
 
@@ -246,18 +438,63 @@ public sealed class ShaderProgram implements AutoCloseable {
         return "Shader Program %d".formatted(this.getId());
     }
 
-    void use() {
-        GL20.glUseProgram(this.getId());
+    //Sources the attributes of layout from the bound array buffer, through a
+    //cached vertex array object, and applies the uniform variables that were
+    //set since the last use
+    void use(VertexLayout layout) {
+        RenderState.useProgram(this.getId());
+        this.applyUniforms();
+        VertexArrayCache.bind(this, layout, RenderState.arrayBuffer());
+    }
+
+    //Saves the value of the uniform variable name, before a Material sets it,
+    //unless it was already saved
+    void saveUniform(String name) {
+        this.ensureOpen();
+        if (this.SAVED_UNIFORMS.containsKey(name)) {
+            return;
+        }//end if
+
+        final Uniform UNIFORM = this.UNIFORMS.get(name);
+        //Checked here, so that a name that can't be set is never restored
+        if (null == UNIFORM && -1 == GL20.glGetUniformLocation(this.ID, name)) {
+            throw new IllegalArgumentException("Argument name does not " +
+                    "correspond to a uniform variable in this ShaderProgram.");
+        }//end if
+        this.SAVED_UNIFORMS.put(name, null == UNIFORM ? null : UNIFORM.copy());
+    }
+
+    //Stages back the values saved by saveUniform, so the uniforms of a
+    //Material don't carry over to what is drawn next with this ShaderProgram
+    void restoreUniforms() {
+        this.ensureOpen();
+        for (Map.Entry<String, Uniform> e : this.SAVED_UNIFORMS.entrySet()) {
+            final Uniform SAVED = e.getValue();
+            final boolean CHANGED;
+            if (null == SAVED) {
+                final Uniform UNIFORM = this.UNIFORMS.get(e.getKey());
+                //Never set, if the Material failed before setting it
+                if (null == UNIFORM) {
+                    continue;
+                }//end if
+                CHANGED = UNIFORM.setZero();
+            } else {
+                final Uniform UNIFORM = this.stage(e.getKey(), SAVED.KIND,
+                                                   SAVED.length());
+                CHANGED = UNIFORM.setValue(SAVED);
+            }//end if
 
-        final int POSITION = GL20.glGetAttribLocation(this.ID, "position");
-        GL20.glEnableVertexAttribArray(POSITION);
-        GL20.glVertexAttribPointer(POSITION, 2, GL11.GL_FLOAT, false,
-                4 * Float.BYTES, 0);
+            if (CHANGED) {
+                this.markDirty(this.UNIFORMS.get(e.getKey()));
+            }//end if
+        }//end for
+        this.SAVED_UNIFORMS.clear();
+    }
 
-        final int TEX_COORD = GL20.glGetAttribLocation(this.ID, "v_texCoord");
-        GL20.glEnableVertexAttribArray(TEX_COORD);
-        GL20.glVertexAttribPointer(TEX_COORD, 2, GL11.GL_FLOAT, false,
-                4 * Float.BYTES, 2 * Float.BYTES);
+    //-1 if name is not an active attribute of this ShaderProgram
+    int getAttributeLocation(String name) {
+        this.ensureOpen();
+        return this.ATTRIBUTE_LOCATIONS.getOrDefault(name, -1);
     }
 
     int getId() {
@@ -265,33 +502,47 @@ public sealed class ShaderProgram implements AutoCloseable {
         return this.ID;
     }
 
-    private int getUniformLocation(String name) {
-        Integer location = this.UNIFORM_LOCATIONS.get(name);
-        if (location != null) {
-            return location;
-        }//end if
-
-        if (this.UNIFORM_LOCATIONS.size() == ShaderProgram.UNIFORM_CACHE_SIZE) {
-            Iterator<?> itr = this.UNIFORM_LOCATIONS.entrySet().iterator();
-            itr.next();
-            itr.remove();
+    //Returns the staged value of the uniform variable name, reshaped to kind
+    //and length. A new or reshaped value is dirty.
+    private Uniform stage(String name, int kind, int length) {
+        this.ensureOpen();
+        Uniform uniform = this.UNIFORMS.get(name);
+        if (uniform != null && uniform.KIND == kind &&
+            uniform.length() == length) {
+            return uniform;
         }//end if
 
-        final int LOCATION = GL20.glGetUniformLocation(this.getId(), name);
+        final int LOCATION = null == uniform ?
+                GL20.glGetUniformLocation(this.ID, name) : uniform.LOCATION;
         if (LOCATION == -1) {
             throw new IllegalArgumentException("Argument name does not " +
                     "correspond to a uniform variable in this ShaderProgram.");
         }//end if
 
-        this.UNIFORM_LOCATIONS.put(name, LOCATION);
-        return LOCATION;
+        if (uniform != null && uniform.dirty) {
+            this.DIRTY_UNIFORMS.remove(uniform);
+        }//end if
+        uniform = new Uniform(LOCATION, kind, length);
+        this.UNIFORMS.put(name, uniform);
+        this.markDirty(uniform);
+        return uniform;
+    }
+
+    private void markDirty(Uniform uniform) {
+        if (!uniform.dirty) {
+            uniform.dirty = true;
+            this.DIRTY_UNIFORMS.add(uniform);
+        }//end if
     }
 
-    private void runOnThisProgram(Runnable action) {
-        final int PREV_PROGRAM = GL11.glGetInteger(GL20.GL_CURRENT_PROGRAM);
-        this.use();
-        action.run();
-        GL20.glUseProgram(PREV_PROGRAM);
+    //This ShaderProgram must be in use
+    private void applyUniforms() {
+        for (int i = 0; i < this.DIRTY_UNIFORMS.size(); ++i) {
+            final Uniform UNIFORM = this.DIRTY_UNIFORMS.get(i);
+            UNIFORM.apply();
+            UNIFORM.dirty = false;
+        }//end for
+        this.DIRTY_UNIFORMS.clear();
     }
 
     private void ensureOpen() throws IllegalStateException {
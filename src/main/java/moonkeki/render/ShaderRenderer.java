@@ -195,6 +195,21 @@ public final class ShaderRenderer extends Renderer implements AutoCloseable {
             return;
         }//end if
 
+        if (FrameCapture.isRecording()) {
+            FrameCapture.recordShaderPasses(this.getCanvas(),
+                                            shaderCommand.size());
+        }//end if
+        FrameCapture.suspend();
+        GpuTimer.begin("ShaderRenderer.apply");
+        try {
+            this.applyPasses(shaderCommand);
+        } finally {
+            GpuTimer.end();
+            FrameCapture.resume();
+        }
+    }
+
+    private void applyPasses(ShaderCommand shaderCommand) {
         final List<Texture> POST_TEXTURES = this.getPostTextures(
                 shaderCommand.size > 1 ? 2 : 1);
         final Color CLEAR_COLOR = new Color(0, 0, 0, 0);
@@ -231,6 +246,12 @@ public final class ShaderRenderer extends Renderer implements AutoCloseable {
                             .draw();
     }
 
+    //Creates the post textures that passes passes of a ShaderCommand need,
+    //ahead of its apply()
+    void preparePostTextures(int passes) {
+        this.getPostTextures(passes > 1 ? 2 : 1);
+    }
+
     private List<Texture> getPostTextures(int count) {
         if (count != 1 && count != 2) {
             throw new IllegalArgumentException("Argument count must be 1 or " +
@@ -0,0 +1,293 @@
+package moonkeki.render;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.IntStream;
+
+/**
+ * Sprites kept in primitive, structure-of-arrays storage, to be submitted to a
+ * {@link BatchRenderer} in bulk with {@link BatchRenderer#submit(SpriteBuffer)}.
+ * Suited for particles and crowds, where going through a DrawCommand per
+ * sprite is too slow.
+ *
+ * <p>A sprite is a quad of (width * scale, height * scale), centered at (x, y)
+ * and rotated counter-clockwise by rotation radians about its center. Its
+ * {@link Pixmap} is given as the id that {@link #register(Pixmap)} returned.
+ *
+ * <p>The corners of all the sprites are computed in one pass over the arrays,
+ * which has no branches, so that it is vectorized by the JIT compiler. A
+ * parallel SpriteBuffer splits the pass across the common ForkJoinPool.
+ */
+public final class SpriteBuffer {
+
+    public static final class Builder {
+        private int capacity = SpriteBuffer.INITIAL_CAPACITY;
+        private boolean parallel;
+
+        private Builder() {}
+
+        //The initial capacity, in sprites
+        public Builder ofCapacity(int capacity) {
+            if (capacity < 1) {
+                throw new IllegalArgumentException("Argument capacity must " +
+                        "be positive.");
+            }//end if
+
+            this.capacity = capacity;
+            return this;
+        }
+
+        public Builder parallel() {
+            this.parallel = true;
+            return this;
+        }
+
+        public Builder sequential() {
+            this.parallel = false;
+            return this;
+        }
+
+        public SpriteBuffer build() {
+            return new SpriteBuffer(this);
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    private static final int INITIAL_CAPACITY = 1024;
+    //Below this many sprites, splitting the pass costs more than it saves
+    private static final int PARALLEL_THRESHOLD = 16384;
+    private static final int PARALLEL_CHUNK = 4096;
+
+    private final boolean PARALLEL;
+    private final List<Pixmap> PIXMAPS = new ArrayList<>();
+    //Input, per sprite
+    private float[] x;
+    private float[] y;
+    private float[] width;
+    private float[] height;
+    private float[] cos;
+    private float[] sin;
+    private float[] scale;
+    private int[] pixmap;
+    //Output, per sprite: the corners, as in the DeferredQueue record format
+    private float[] botLeftX;
+    private float[] botLeftY;
+    private float[] topLeftX;
+    private float[] topLeftY;
+    private float[] topRightX;
+    private float[] topRightY;
+    private float[] botRightX;
+    private float[] botRightY;
+    private int size;
+
+    private SpriteBuffer(Builder builder) {
+        this.PARALLEL = builder.parallel;
+        this.allocate(builder.capacity);
+    }
+
+    //Returns the id of pixmap, to be passed to add and setPixmap
+    public int register(Pixmap pixmap) {
+        if (pixmap.isVoid()) {
+            throw new IllegalArgumentException("Argument pixmap can't be " +
+                    "void.");
+        }//end if
+
+        this.PIXMAPS.add(pixmap);
+        return this.PIXMAPS.size() - 1;
+    }
+
+    //Returns the index of the new sprite
+    public int add(float x, float y, float width, float height, float rotation,
+                   float scale, int pixmapId) {
+        this.ensurePixmapId(pixmapId);
+        if (this.size == this.x.length) {
+            this.allocate(Math.multiplyExact(this.x.length, 2));
+        }//end if
+
+        final int INDEX = this.size++;
+        this.x[INDEX] = x;
+        this.y[INDEX] = y;
+        this.width[INDEX] = width;
+        this.height[INDEX] = height;
+        this.cos[INDEX] = (float) Math.cos(rotation);
+        this.sin[INDEX] = (float) Math.sin(rotation);
+        this.scale[INDEX] = scale;
+        this.pixmap[INDEX] = pixmapId;
+        return INDEX;
+    }
+
+    public void setPosition(int index, float x, float y) {
+        Objects.checkIndex(index, this.size);
+        this.x[index] = x;
+        this.y[index] = y;
+    }
+
+    public void setSize(int index, float width, float height) {
+        Objects.checkIndex(index, this.size);
+        this.width[index] = width;
+        this.height[index] = height;
+    }
+
+    public void setRotation(int index, float rotation) {
+        Objects.checkIndex(index, this.size);
+        this.cos[index] = (float) Math.cos(rotation);
+        this.sin[index] = (float) Math.sin(rotation);
+    }
+
+    public void setScale(int index, float scale) {
+        Objects.checkIndex(index, this.size);
+        this.scale[index] = scale;
+    }
+
+    public void setPixmap(int index, int pixmapId) {
+        Objects.checkIndex(index, this.size);
+        this.ensurePixmapId(pixmapId);
+        this.pixmap[index] = pixmapId;
+    }
+
+    //The number of sprites
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return 0 == this.size;
+    }
+
+    public boolean isParallel() {
+        return this.PARALLEL;
+    }
+
+    //Removes the sprites, the registered pixmaps are kept
+    public void clear() {
+        this.size = 0;
+    }
+
+    //Computes the corners of every sprite
+    void transform() {
+        if (!this.PARALLEL || this.size < SpriteBuffer.PARALLEL_THRESHOLD) {
+            this.transform(0, this.size);
+            return;
+        }//end if
+
+        final int CHUNKS = (this.size + SpriteBuffer.PARALLEL_CHUNK - 1) /
+                           SpriteBuffer.PARALLEL_CHUNK;
+        IntStream.range(0, CHUNKS).parallel().forEach(c -> this.transform(
+                c * SpriteBuffer.PARALLEL_CHUNK,
+                Math.min(this.size, (c + 1) * SpriteBuffer.PARALLEL_CHUNK)));
+    }
+
+    //Valid after transform()
+    void toQuad(float[] quad, int offset, int index) {
+        quad[offset] = this.botLeftX[index];
+        quad[offset + 1] = this.botLeftY[index];
+        quad[offset + 2] = this.topLeftX[index];
+        quad[offset + 3] = this.topLeftY[index];
+        quad[offset + 4] = this.topRightX[index];
+        quad[offset + 5] = this.topRightY[index];
+        quad[offset + 6] = this.botRightX[index];
+        quad[offset + 7] = this.botRightY[index];
+
+        final Pixmap PIXMAP = this.PIXMAPS.get(this.pixmap[index]);
+        quad[offset + 8] = PIXMAP.getMinU();
+        quad[offset + 9] = PIXMAP.getMinV();
+        quad[offset + 10] = PIXMAP.getMaxU();
+        quad[offset + 11] = PIXMAP.getMaxV();
+    }
+
+    Texture textureAt(int index) {
+        return this.PIXMAPS.get(this.pixmap[index]).getTexture();
+    }
+
+    //Whether a registered pixmap is backed by backend
+    boolean isBackedBy(Object backend) {
+        for (Pixmap p : this.PIXMAPS) {
+            if (backend.equals(p.getTexture())) {
+                return true;
+            }//end if
+        }//end for
+
+        return false;
+    }
+
+    //Kept free of branches and calls, so the loop is vectorized
+    private void transform(int from, int to) {
+        final float[] X = this.x;
+        final float[] Y = this.y;
+        final float[] WIDTH = this.width;
+        final float[] HEIGHT = this.height;
+        final float[] COS = this.cos;
+        final float[] SIN = this.sin;
+        final float[] SCALE = this.scale;
+        final float[] BOT_LEFT_X = this.botLeftX;
+        final float[] BOT_LEFT_Y = this.botLeftY;
+        final float[] TOP_LEFT_X = this.topLeftX;
+        final float[] TOP_LEFT_Y = this.topLeftY;
+        final float[] TOP_RIGHT_X = this.topRightX;
+        final float[] TOP_RIGHT_Y = this.topRightY;
+        final float[] BOT_RIGHT_X = this.botRightX;
+        final float[] BOT_RIGHT_Y = this.botRightY;
+        for (int i = from; i < to; ++i) {
+            final float HALF_WIDTH = 0.5f * WIDTH[i] * SCALE[i];
+            final float HALF_HEIGHT = 0.5f * HEIGHT[i] * SCALE[i];
+            //The rotated half extents, along the width and along the height
+            final float WX = COS[i] * HALF_WIDTH;
+            final float WY = SIN[i] * HALF_WIDTH;
+            final float HX = -SIN[i] * HALF_HEIGHT;
+            final float HY = COS[i] * HALF_HEIGHT;
+
+            BOT_LEFT_X[i] = X[i] - WX - HX;
+            BOT_LEFT_Y[i] = Y[i] - WY - HY;
+            TOP_LEFT_X[i] = X[i] - WX + HX;
+            TOP_LEFT_Y[i] = Y[i] - WY + HY;
+            TOP_RIGHT_X[i] = X[i] + WX + HX;
+            TOP_RIGHT_Y[i] = Y[i] + WY + HY;
+            BOT_RIGHT_X[i] = X[i] + WX - HX;
+            BOT_RIGHT_Y[i] = Y[i] + WY - HY;
+        }//end for
+    }
+
+    private void ensurePixmapId(int pixmapId) {
+        if (pixmapId < 0 || pixmapId >= this.PIXMAPS.size()) {
+            throw new IllegalArgumentException("Argument pixmapId is not the " +
+                    "id of a registered Pixmap.");
+        }//end if
+    }
+
+    private void allocate(int capacity) {
+        if (null == this.x) {
+            this.x = new float[capacity];
+            this.y = new float[capacity];
+            this.width = new float[capacity];
+            this.height = new float[capacity];
+            this.cos = new float[capacity];
+            this.sin = new float[capacity];
+            this.scale = new float[capacity];
+            this.pixmap = new int[capacity];
+        } else {
+            this.x = Arrays.copyOf(this.x, capacity);
+            this.y = Arrays.copyOf(this.y, capacity);
+            this.width = Arrays.copyOf(this.width, capacity);
+            this.height = Arrays.copyOf(this.height, capacity);
+            this.cos = Arrays.copyOf(this.cos, capacity);
+            this.sin = Arrays.copyOf(this.sin, capacity);
+            this.scale = Arrays.copyOf(this.scale, capacity);
+            this.pixmap = Arrays.copyOf(this.pixmap, capacity);
+        }//end if
+
+        this.botLeftX = new float[capacity];
+        this.botLeftY = new float[capacity];
+        this.topLeftX = new float[capacity];
+        this.topLeftY = new float[capacity];
+        this.topRightX = new float[capacity];
+        this.topRightY = new float[capacity];
+        this.botRightX = new float[capacity];
+        this.botRightY = new float[capacity];
+    }
+
+}
@@ -0,0 +1,284 @@
+package moonkeki.render;
+
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL32;
+import org.lwjgl.system.MemoryUtil;
+
+import java.awt.geom.AffineTransform;
+import java.nio.ByteBuffer;
+
+/**
+ * Quads that are recorded once and uploaded to a GPU-resident buffer, so they
+ * can be drawn any number of times without writing their vertices again. Suited
+ * for content that never changes, like tile maps and static backgrounds.
+ *
+ * <p>The recorded quads are grouped into runs of the same {@link Texture},
+ * ordered by layer and then by texture, each drawn with a single draw call.
+ * Within a run the submission order is kept. An extra transform, e.g. a
+ * camera, can be supplied on every draw, and is applied as a uniform.
+ */
+public final class StaticBatch extends Renderer implements AutoCloseable {
+
+    public static final class Builder {
+        private Canvas canvas = WindowRegion.WINDOW;
+        private ShaderProgram shader = ShaderProgram.DEFAULT;
+        private int framebufferId = -1; //-1 if the StaticBatch owns one
+        private final DeferredQueue QUEUE = new DeferredQueue(false);
+        private final float[] QUAD = new float[
+                DeferredQueue.FLOATS_PER_RECORD];
+
+        private Builder() {}
+
+        public Builder ofCanvas(Canvas canvas) {
+            this.canvas = canvas;
+            return this;
+        }
+
+        public Builder ofShader(ShaderProgram shader) {
+            this.shader = shader;
+            return this;
+        }
+
+        //The StaticBatch draws through a framebuffer of its owner, which it
+        //doesn't delete
+        Builder ofFramebuffer(int framebufferId) {
+            this.framebufferId = framebufferId;
+            return this;
+        }
+
+        //The layer is taken from DrawCommand.getLayer()
+        public Builder add(PixmapRenderer.DrawCommand drawCommand) {
+            final Pixmap PIXMAP = drawCommand.getPixmap();
+            if (PIXMAP.isVoid() || 0.0 == drawCommand.getWidth() ||
+                                   0.0 == drawCommand.getHeight()) {
+                return this;
+            }//end if
+
+            PixmapRenderer.toQuad(this.QUAD, 0, drawCommand);
+            this.QUEUE.add(PIXMAP.getTexture(), drawCommand.getLayer(),
+                           this.QUAD, 0);
+            return this;
+        }
+
+        public StaticBatch build() {
+            return new StaticBatch(this);
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    private static final int VERTICES_PER_QUAD = 4;
+    private static final AffineTransform IDENTITY = new AffineTransform();
+
+    private final Canvas CANVAS;
+    private final ShaderProgram SHADER;
+    private final int CANVAS_FRAMEBUFFER_ID;
+    private final boolean OWNS_FRAMEBUFFER;
+    private final int BUFFER_OBJECT_ID;
+    private int size; //in quads
+    //Run i draws runSizes[i] quads of runTextures[i], from runFirsts[i]
+    private Texture[] runTextures;
+    private int[] runFirsts;
+    private int[] runSizes;
+    private int maxRunSize;
+    private boolean closed;
+
+    private StaticBatch(Builder builder) {
+        this.CANVAS = builder.canvas;
+        this.SHADER = builder.shader;
+        this.OWNS_FRAMEBUFFER = -1 == builder.framebufferId;
+        this.BUFFER_OBJECT_ID = GL15.glGenBuffers();
+        try {
+            this.upload(builder.QUEUE);
+        } catch (RuntimeException e) {
+            RenderState.deleteBuffer(this.BUFFER_OBJECT_ID);
+            throw e;
+        }
+
+        if (!this.OWNS_FRAMEBUFFER) {
+            this.CANVAS_FRAMEBUFFER_ID = builder.framebufferId;
+        } else {
+            this.CANVAS_FRAMEBUFFER_ID = this.CANVAS.getBackend().equals(
+                    WindowRegion.WINDOW.getBackend()) ? 0 :
+                    RenderState.genFramebuffer();
+        }//end if
+    }
+
+    public void draw() {
+        this.draw(StaticBatch.IDENTITY);
+    }
+
+    //camera is applied on top of the recorded quads
+    public void draw(AffineTransform camera) {
+        this.ensureOpen();
+        if (0 == this.size) {
+            return;
+        }//end if
+
+        this.CANVAS.setup(this.CANVAS_FRAMEBUFFER_ID);
+        RenderState.bindArrayBuffer(this.BUFFER_OBJECT_ID);
+        this.SHADER.setUniformMatrix("transformMatrix",
+                PixmapRenderer.getCombined(this.CANVAS, camera));
+        this.SHADER.use(VertexLayout.DEFAULT);
+        QuadIndexBuffer.shared().bind(this.maxRunSize);
+        for (int i = 0; i < this.runTextures.length; ++i) {
+            this.runTextures[i].bind();
+            RenderStatistics.countDrawCall();
+            GL32.glDrawElementsBaseVertex(GL11.GL_TRIANGLES,
+                    this.runSizes[i] * QuadIndexBuffer.INDICES_PER_QUAD,
+                    QuadIndexBuffer.INDEX_TYPE, 0,
+                    this.runFirsts[i] * StaticBatch.VERTICES_PER_QUAD);
+        }//end for
+    }
+
+    //Replaces the quads with those added to builder, into the same buffer.
+    //The canvas and the shader of builder are ignored.
+    void rebuild(Builder builder) {
+        this.ensureOpen();
+        this.upload(builder.QUEUE);
+    }
+
+    @Override
+    public Canvas getCanvas() {
+        this.ensureOpen();
+        return this.CANVAS;
+    }
+
+    //The number of quads
+    public int size() {
+        this.ensureOpen();
+        return this.size;
+    }
+
+    //The number of draw calls per draw
+    public int runs() {
+        this.ensureOpen();
+        return this.runTextures.length;
+    }
+
+    public boolean isClosed() {
+        return this.closed;
+    }
+
+    @Override
+    public void close() {
+        if (this.isClosed()) {
+            return;
+        }//end if
+
+        if (this.OWNS_FRAMEBUFFER) {
+            RenderState.deleteFramebuffer(this.CANVAS_FRAMEBUFFER_ID);
+        }//end if
+        RenderState.deleteBuffer(this.BUFFER_OBJECT_ID);
+        this.closed = true;
+    }
+
+    @Override
+    void setupCanvas() {
+        this.getCanvas().setup(this.CANVAS_FRAMEBUFFER_ID);
+    }
+
+    @Override
+    void copyCanvasTo(Pixmap destination) {
+        this.getCanvas().copyTo(destination, this.CANVAS_FRAMEBUFFER_ID);
+    }
+
+    //Sorts the quads of queue into runs and uploads them, clears queue
+    private void upload(DeferredQueue queue) {
+        try {
+            this.uploadSorted(queue);
+        } finally {
+            queue.clear();
+        }
+    }
+
+    private void uploadSorted(DeferredQueue queue) {
+        final int SIZE = queue.size();
+        queue.sort();
+
+        int runs = 0;
+        Texture last = null;
+        for (int i = 0; i < SIZE; ++i) {
+            final Texture TEXTURE = queue.textureOf(queue.recordAt(i));
+            if (this.CANVAS.getBackend().equals(TEXTURE)) {
+                throw new IllegalArgumentException("The pixmap of a " +
+                        "DrawCommand is the canvas of this StaticBatch.");
+            }//end if
+
+            if (!TEXTURE.equals(last)) {
+                ++runs;
+                last = TEXTURE;
+            }//end if
+        }//end for
+
+        final Texture[] RUN_TEXTURES = new Texture[runs];
+        final int[] RUN_FIRSTS = new int[runs];
+        final int[] RUN_SIZES = new int[runs];
+
+        final int STRIDE = VertexLayout.DEFAULT.getStride();
+        final ByteBuffer VERTICES = MemoryUtil.memAlloc(Math.multiplyExact(
+                Math.max(SIZE, 1), STRIDE * StaticBatch.VERTICES_PER_QUAD));
+        final float[] DATA = queue.data();
+        int run = -1;
+        for (int i = 0; i < SIZE; ++i) {
+            final int RECORD = queue.recordAt(i);
+            final Texture TEXTURE = queue.textureOf(RECORD);
+            if (-1 == run || !TEXTURE.equals(RUN_TEXTURES[run])) {
+                ++run;
+                RUN_TEXTURES[run] = TEXTURE;
+                RUN_FIRSTS[run] = i;
+            }//end if
+            ++RUN_SIZES[run];
+            StaticBatch.putQuad(VERTICES, DATA, queue.offsetOf(RECORD));
+        }//end for
+
+        int maxRunSize = 0;
+        for (final int RUN_SIZE : RUN_SIZES) {
+            maxRunSize = Math.max(maxRunSize, RUN_SIZE);
+        }//end for
+
+        VERTICES.flip();
+        RenderStatistics.countUpload(VERTICES.remaining());
+        RenderState.bindArrayBuffer(this.BUFFER_OBJECT_ID);
+        GL15.glBufferData(GL15.GL_ARRAY_BUFFER, VERTICES, GL15.GL_STATIC_DRAW);
+        MemoryUtil.memFree(VERTICES);
+
+        this.size = SIZE;
+        this.runTextures = RUN_TEXTURES;
+        this.runFirsts = RUN_FIRSTS;
+        this.runSizes = RUN_SIZES;
+        this.maxRunSize = maxRunSize;
+    }
+
+    //Writes a quad given in the DeferredQueue record format, in the order of
+    //QuadIndexBuffer
+    private static void putQuad(ByteBuffer vertices, float[] quad, int offset) {
+        final float MIN_U = quad[offset + 8];
+        final float MIN_V = quad[offset + 9];
+        final float MAX_U = quad[offset + 10];
+        final float MAX_V = quad[offset + 11];
+
+        //top-left
+        vertices.putFloat(quad[offset + 2]).putFloat(quad[offset + 3])
+                .putFloat(MIN_U).putFloat(MAX_V);
+        //top-right
+        vertices.putFloat(quad[offset + 4]).putFloat(quad[offset + 5])
+                .putFloat(MAX_U).putFloat(MAX_V);
+        //bot-left
+        vertices.putFloat(quad[offset]).putFloat(quad[offset + 1])
+                .putFloat(MIN_U).putFloat(MIN_V);
+        //bot-right
+        vertices.putFloat(quad[offset + 6]).putFloat(quad[offset + 7])
+                .putFloat(MAX_U).putFloat(MIN_V);
+    }
+
+    private void ensureOpen() throws IllegalStateException {
+        if (this.isClosed()) {
+            throw new IllegalStateException("This StaticBatch is closed.");
+        }//end if
+    }
+
+}
@@ -0,0 +1,200 @@
+package moonkeki.render;
+
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL32;
+import org.lwjgl.opengl.GL44;
+import org.lwjgl.opengl.GLCapabilities;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * An OpenGL array buffer that is split into a ring of equally sized regions,
+ * used to stream vertex data to the GPU. While the GPU reads the regions that
+ * have been drawn from, new data is written into the next free one.
+ *
+ * <p>If the context supports persistent mapping (OpenGL 4.4 or
+ * ARB_buffer_storage), the regions are written directly by the CPU through a
+ * persistently mapped view, guarded by a fence per region. Otherwise, the data
+ * is uploaded with {@code glBufferSubData}, orphaning the storage of the buffer
+ * every time it wraps around.
+ */
+final class StreamBuffer implements AutoCloseable {
+
+    private static final int MAP_FLAGS = GL30.GL_MAP_WRITE_BIT |
+                                         GL44.GL_MAP_PERSISTENT_BIT |
+                                         GL44.GL_MAP_COHERENT_BIT;
+    //in nanoseconds
+    private static final long FENCE_TIMEOUT = 1_000_000L;
+
+    private final int ID;
+    private final int REGION_SIZE;
+    private final int REGION_COUNT;
+    private final ByteBuffer MAPPED; //null if not persistent
+    private final long[] FENCES; //null if not persistent
+    private int region;
+    private int cursor; //Used only if not persistent
+    private boolean closed;
+
+    static boolean isPersistentSupported() {
+        final GLCapabilities CAPABILITIES = GL.getCapabilities();
+        return CAPABILITIES.OpenGL44 || CAPABILITIES.GL_ARB_buffer_storage;
+    }
+
+    //regionSize in bytes
+    StreamBuffer(int regionSize, int regionCount) {
+        if (regionSize < 1) {
+            throw new IllegalArgumentException("Argument regionSize must be " +
+                    "positive.");
+        }//end if
+
+        if (regionCount < 2) {
+            throw new IllegalArgumentException("Argument regionCount must be " +
+                    "at least 2.");
+        }//end if
+
+        final int SIZE = Math.multiplyExact(regionSize, regionCount);
+        this.ID = GL15.glGenBuffers();
+        this.REGION_SIZE = regionSize;
+        this.REGION_COUNT = regionCount;
+
+        RenderState.bindArrayBuffer(this.ID);
+        if (StreamBuffer.isPersistentSupported()) {
+            GL44.glBufferStorage(GL15.GL_ARRAY_BUFFER, SIZE,
+                                 StreamBuffer.MAP_FLAGS);
+            this.MAPPED = GL30.glMapBufferRange(GL15.GL_ARRAY_BUFFER, 0, SIZE,
+                                                StreamBuffer.MAP_FLAGS);
+            if (null == this.MAPPED) {
+                throw new IllegalStateException("Can't map the StreamBuffer.");
+            }//end if
+            this.FENCES = new long[regionCount];
+        } else {
+            GL15.glBufferData(GL15.GL_ARRAY_BUFFER, SIZE,
+                              GL15.GL_STREAM_DRAW);
+            this.MAPPED = null;
+            this.FENCES = null;
+        }//end if
+    }
+
+    int getId() {
+        this.ensureOpen();
+        return this.ID;
+    }
+
+    boolean isPersistent() {
+        return this.MAPPED != null;
+    }
+
+    //Only if persistent, a writable view of the current region
+    ByteBuffer region() {
+        this.ensureOpen();
+        if (!this.isPersistent()) {
+            throw new IllegalStateException("This StreamBuffer is not " +
+                    "persistently mapped.");
+        }//end if
+
+        return this.MAPPED.slice(this.region * this.REGION_SIZE,
+                                 this.REGION_SIZE)
+                          .order(ByteOrder.nativeOrder());
+    }
+
+    //data must be flipped, if persistent it must be the current region()
+    //returns the offset in bytes that data resides in this StreamBuffer
+    int upload(ByteBuffer data) {
+        this.ensureOpen();
+        if (data.remaining() > this.REGION_SIZE) {
+            throw new IllegalArgumentException("Argument data doesn't fit in " +
+                    "a region of this StreamBuffer.");
+        }//end if
+
+        if (this.isPersistent()) {
+            return this.region * this.REGION_SIZE;
+        }//end if
+
+        RenderState.bindArrayBuffer(this.ID);
+        if (this.cursor + data.remaining() >
+            this.REGION_SIZE * this.REGION_COUNT) {
+            //Orphaning, the driver hands us fresh storage, while the GPU
+            //keeps reading the old one
+            GL15.glBufferData(GL15.GL_ARRAY_BUFFER,
+                              (long) this.REGION_SIZE * this.REGION_COUNT,
+                              GL15.GL_STREAM_DRAW);
+            this.cursor = 0;
+        }//end if
+
+        final int OFFSET = this.cursor;
+        GL15.glBufferSubData(GL15.GL_ARRAY_BUFFER, OFFSET, data);
+        this.cursor += data.remaining();
+        return OFFSET;
+    }
+
+    //To be called after the GPU commands that read the current region have
+    //been issued
+    void fence() {
+        this.ensureOpen();
+        if (!this.isPersistent()) {
+            return;
+        }//end if
+
+        this.FENCES[this.region] = GL32.glFenceSync(
+                GL32.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+        this.region = (this.region + 1) % this.REGION_COUNT;
+        this.await(this.region);
+    }
+
+    boolean isClosed() {
+        return this.closed;
+    }
+
+    @Override
+    public void close() {
+        if (this.isClosed()) {
+            return;
+        }//end if
+
+        if (this.isPersistent()) {
+            for (int i = 0; i < this.REGION_COUNT; ++i) {
+                if (this.FENCES[i] != 0L) {
+                    GL32.glDeleteSync(this.FENCES[i]);
+                    this.FENCES[i] = 0L;
+                }//end if
+            }//end for
+
+            RenderState.bindArrayBuffer(this.ID);
+            GL30.glUnmapBuffer(GL15.GL_ARRAY_BUFFER);
+        }//end if
+
+        RenderState.deleteBuffer(this.ID);
+        this.closed = true;
+    }
+
+    private void await(int region) {
+        final long FENCE = this.FENCES[region];
+        if (0L == FENCE) {
+            return;
+        }//end if
+
+        int status;
+        do {
+            status = GL32.glClientWaitSync(FENCE,
+                    GL32.GL_SYNC_FLUSH_COMMANDS_BIT,
+                    StreamBuffer.FENCE_TIMEOUT);
+            if (GL32.GL_WAIT_FAILED == status) {
+                throw new IllegalStateException("Can't wait on the fence of " +
+                        "a StreamBuffer region.");
+            }//end if
+        } while (GL32.GL_TIMEOUT_EXPIRED == status);
+
+        GL32.glDeleteSync(FENCE);
+        this.FENCES[region] = 0L;
+    }
+
+    private void ensureOpen() throws IllegalStateException {
+        if (this.isClosed()) {
+            throw new IllegalStateException("This StreamBuffer is closed.");
+        }//end if
+    }
+
+}
@@ -23,6 +23,8 @@ public final class Texture extends Pixmap implements AutoCloseable {
     private final int ID;
     private final int WIDTH;
     private final int HEIGHT;
+    //The renderbuffer of the depth buffer, 0 if this Texture has none
+    private int depthBufferId;
 
     /**
      * Indicates if the OpenGL texture of this {@link Texture} is deleted.
@@ -36,7 +38,7 @@ public final class Texture extends Pixmap implements AutoCloseable {
     }
 
     static void unbind() {
-        GL11.glBindTexture(GL11.GL_TEXTURE_2D, 0);
+        RenderState.bindTexture(0);
     }
 
     /**
@@ -65,8 +67,10 @@ public final class Texture extends Pixmap implements AutoCloseable {
         return (i, j) -> bufferedImage.getRGB(j, HEIGHT - i - 1);
     }
 
-    private static ByteBuffer toByteBuffer(final int width, final int height,
-                                           IntBinaryOperator texels) {
+    //Package-private for the benchmarks. The buffer must be freed with
+    //MemoryUtil.memFree.
+    static ByteBuffer toByteBuffer(final int width, final int height,
+                                   IntBinaryOperator texels) {
         if (width <= 0) {
             throw new IllegalArgumentException("Argument width must be " +
                     "positive.");
@@ -113,7 +117,7 @@ public final class Texture extends Pixmap implements AutoCloseable {
         }//end if
 
         final int TEXTURE_ID = GL11.glGenTextures();
-        GL11.glBindTexture(GL11.GL_TEXTURE_2D, TEXTURE_ID);
+        RenderState.bindTexture(TEXTURE_ID);
 
         GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_S,
                              GL13C.GL_CLAMP_TO_BORDER);
@@ -163,7 +167,13 @@ public final class Texture extends Pixmap implements AutoCloseable {
 
     public Texture(final int width, final int height, Color color) {
         final Texture TEXTURE = new Texture(width, height);
-        TEXTURE.clear(color);
+        //Filling a new Texture is not a command of the frame
+        FrameCapture.suspend();
+        try {
+            TEXTURE.clear(color);
+        } finally {
+            FrameCapture.resume();
+        }
 
         this.ID = TEXTURE.ID;
         this.WIDTH = width;
@@ -195,11 +205,11 @@ public final class Texture extends Pixmap implements AutoCloseable {
                     "be closed.");
         }//end if
 
-        final int FRAMEBUFFER_ID = GL30.glGenFramebuffers();
+        final int FRAMEBUFFER_ID = RenderState.genFramebuffer();
         final Texture TEXTURE = new Texture(other.getWidth(),
                                             other.getHeight());
 
-        GL30.glBindFramebuffer(GL30.GL_READ_FRAMEBUFFER, FRAMEBUFFER_ID);
+        RenderState.bindReadFramebuffer(FRAMEBUFFER_ID);
         GL30.glFramebufferTexture2D(GL30.GL_READ_FRAMEBUFFER,
                                     GL30.GL_COLOR_ATTACHMENT0,
                                     GL11.GL_TEXTURE_2D,
@@ -209,7 +219,7 @@ public final class Texture extends Pixmap implements AutoCloseable {
         TEXTURE.bind();
         GL20.glCopyTexSubImage2D(GL11.GL_TEXTURE_2D, 0, 0, 0, 0, 0,
                                  TEXTURE.getWidth(), TEXTURE.getHeight());
-        GL30.glDeleteFramebuffers(FRAMEBUFFER_ID);
+        RenderState.deleteFramebuffer(FRAMEBUFFER_ID);
 
         this.ID = TEXTURE.ID;
         this.WIDTH = other.getWidth();
@@ -219,9 +229,9 @@ public final class Texture extends Pixmap implements AutoCloseable {
     public Texture(Canvas canvas) {
         final Texture TEXTURE = new Texture(canvas.getWidth(),
                                             canvas.getHeight());
-        final int CANVAS_FRAMEBUFFER_ID = GL30.glGenFramebuffers();
+        final int CANVAS_FRAMEBUFFER_ID = RenderState.genFramebuffer();
         this.copyTo(TEXTURE, CANVAS_FRAMEBUFFER_ID);
-        GL30.glDeleteFramebuffers(CANVAS_FRAMEBUFFER_ID);
+        RenderState.deleteFramebuffer(CANVAS_FRAMEBUFFER_ID);
 
         this.ID = TEXTURE.ID;
         this.WIDTH = canvas.getWidth();
@@ -240,16 +250,34 @@ public final class Texture extends Pixmap implements AutoCloseable {
         return this.HEIGHT;
     }
 
+    /**
+     * Gives this {@link Texture} a depth buffer of its size, which is attached
+     * along with it when it is drawn onto. Only needed by a depth tested {@link
+     * BatchRenderer}. Does nothing if this {@link Texture} has one already.
+     */
+    public void attachDepthBuffer() {
+        this.ensureOpen();
+        if (this.depthBufferId != 0) {
+            return;
+        }//end if
+
+        this.depthBufferId = GL30.glGenRenderbuffers();
+        GL30.glBindRenderbuffer(GL30.GL_RENDERBUFFER, this.depthBufferId);
+        GL30.glRenderbufferStorage(GL30.GL_RENDERBUFFER,
+                                   GL14.GL_DEPTH_COMPONENT24,
+                                   this.WIDTH, this.HEIGHT);
+        GL30.glBindRenderbuffer(GL30.GL_RENDERBUFFER, 0);
+    }
+
+    public boolean hasDepthBuffer() {
+        this.ensureOpen();
+        return this.depthBufferId != 0;
+    }
+
     public BufferedImage toBufferedImage() {
         final int WIDTH = this.getWidth();
         final int HEIGHT = this.getHeight();
-
-        final int SIZE = Math.multiplyExact(WIDTH, HEIGHT);
-        final int[] DATA = new int[SIZE];
-        this.bind();
-        GL11.glGetTexImage(GL11.GL_TEXTURE_2D, 0, GL12.GL_BGRA,
-                           GL11.GL_UNSIGNED_BYTE, DATA);
-        Texture.unbind();
+        final int[] DATA = this.getTexels();
 
         for (int x = 0; x < WIDTH; x++) {
             for (int y = 0; y < HEIGHT / 2; y++) {
@@ -270,6 +298,17 @@ public final class Texture extends Pixmap implements AutoCloseable {
         return bufferedImage;
     }
 
+    //As returned by Color.getRGB(), row-major from the bottom row up
+    int[] getTexels() {
+        final int[] TEXELS = new int[Math.multiplyExact(this.getWidth(),
+                                                        this.getHeight())];
+        this.bind();
+        GL11.glGetTexImage(GL11.GL_TEXTURE_2D, 0, GL12.GL_BGRA,
+                           GL11.GL_UNSIGNED_BYTE, TEXELS);
+        Texture.unbind();
+        return TEXELS;
+    }
+
     /**
      * Deletes the OpenGL texture of this {@link Texture}. After a call to this
      * method, this {@link Texture} must not be used, except its {@link
@@ -283,10 +322,18 @@ public final class Texture extends Pixmap implements AutoCloseable {
             return;
         }//end if
 
-        GL11.glDeleteTextures(this.getId());
+        RenderState.deleteTexture(this.getId());
+        if (this.depthBufferId != 0) {
+            GL30.glDeleteRenderbuffers(this.depthBufferId);
+        }//end if
         this.closed = true;
     }
 
+    //0 if this Texture has no depth buffer
+    int getDepthBufferId() {
+        return this.depthBufferId;
+    }
+
     @Override
     public boolean isClosed() {
         return this.closed;
@@ -334,7 +381,7 @@ public final class Texture extends Pixmap implements AutoCloseable {
      * {@link #isClosed()} returns {@code true}.
      */
     void bind() {
-        GL11.glBindTexture(GL11.GL_TEXTURE_2D, this.getId());
+        RenderState.bindTexture(this.getId());
     }
 
     @Override
@@ -349,6 +396,30 @@ public final class Texture extends Pixmap implements AutoCloseable {
         return 0;
     }
 
+    @Override
+    float getMinU() {
+        this.ensureOpen();
+        return 0.0f;
+    }
+
+    @Override
+    float getMaxU() {
+        this.ensureOpen();
+        return 1.0f;
+    }
+
+    @Override
+    float getMinV() {
+        this.ensureOpen();
+        return 0.0f;
+    }
+
+    @Override
+    float getMaxV() {
+        this.ensureOpen();
+        return 1.0f;
+    }
+
     /**
      * Ensures that this {@link Texture} is open, i.e. {@link #isClosed()}
      * returns {@code false}, by throwing an exception if it's closed. If this
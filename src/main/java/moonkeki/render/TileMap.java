@@ -0,0 +1,363 @@
+package moonkeki.render;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A grid of tiles, each drawing a {@link Pixmap} of a {@link TextureAtlas},
+ * that is split into square chunks of tiles. The geometry of a chunk is built
+ * lazily, as a {@link StaticBatch}, the first time the chunk becomes visible,
+ * and is rebuilt, into the same buffer, only after one of its tiles changes.
+ * A chunk without tiles has no StaticBatch. On every draw, only the chunks
+ * that intersect the view of the {@link Canvas} are drawn, all through the
+ * framebuffer of the TileMap.
+ *
+ * <p>Tile (column, row) covers the rectangle that starts from (column *
+ * tileWidth, row * tileHeight), with the origin in the bottom left corner.
+ *
+ * @param <K> The type of the keys of the {@link TextureAtlas}.
+ */
+public final class TileMap<K> extends Renderer implements AutoCloseable {
+
+    public static final class Builder<K> {
+        private TextureAtlas<K> atlas;
+        private int columns;
+        private int rows;
+        private int tileWidth;
+        private int tileHeight;
+        private int chunkSize = 32; //in tiles
+        private Canvas canvas = WindowRegion.WINDOW;
+        private ShaderProgram shader = ShaderProgram.DEFAULT;
+
+        private Builder() {}
+
+        public Builder<K> ofAtlas(TextureAtlas<K> atlas) {
+            this.atlas = atlas;
+            return this;
+        }
+
+        public Builder<K> ofSize(int columns, int rows) {
+            if (columns < 1 || rows < 1) {
+                throw new IllegalArgumentException("Arguments columns and " +
+                        "rows must be positive.");
+            }//end if
+
+            this.columns = columns;
+            this.rows = rows;
+            return this;
+        }
+
+        public Builder<K> ofTileSize(int tileWidth, int tileHeight) {
+            if (tileWidth < 1 || tileHeight < 1) {
+                throw new IllegalArgumentException("Arguments tileWidth and " +
+                        "tileHeight must be positive.");
+            }//end if
+
+            this.tileWidth = tileWidth;
+            this.tileHeight = tileHeight;
+            return this;
+        }
+
+        //The side of a chunk in tiles
+        public Builder<K> ofChunkSize(int chunkSize) {
+            if (chunkSize < 1) {
+                throw new IllegalArgumentException("Argument chunkSize must " +
+                        "be positive.");
+            }//end if
+
+            this.chunkSize = chunkSize;
+            return this;
+        }
+
+        public Builder<K> ofCanvas(Canvas canvas) {
+            this.canvas = canvas;
+            return this;
+        }
+
+        public Builder<K> ofShader(ShaderProgram shader) {
+            this.shader = shader;
+            return this;
+        }
+
+        public TileMap<K> build() {
+            if (null == this.atlas) {
+                throw new IllegalStateException("The TextureAtlas of the " +
+                        "TileMap is not set.");
+            }//end if
+
+            if (0 == this.columns || 0 == this.tileWidth) {
+                throw new IllegalStateException("The size and the tile size " +
+                        "of the TileMap are not set.");
+            }//end if
+
+            return new TileMap<>(this);
+        }
+    }
+
+    public static <K> Builder<K> builder() {
+        return new Builder<>();
+    }
+
+    //Tile ids are indices in PALETTE plus 1, 0 is an empty tile
+    private static final int EMPTY = 0;
+    private static final int MAX_PALETTE_SIZE = 0xFFFF;
+
+    private final TextureAtlas<K> ATLAS;
+    private final int COLUMNS;
+    private final int ROWS;
+    private final int TILE_WIDTH;
+    private final int TILE_HEIGHT;
+    private final int CHUNK_SIZE;
+    private final int CHUNK_COLUMNS;
+    private final int CHUNK_ROWS;
+    private final Canvas CANVAS;
+    private final ShaderProgram SHADER;
+    private final int CANVAS_FRAMEBUFFER_ID;
+    private final char[] TILES; //Unsigned 16-bit tile ids, row-major
+    private final List<K> KEYS = new ArrayList<>();
+    private final List<Pixmap> PALETTE = new ArrayList<>();
+    private final Map<K, Integer> IDS = new HashMap<>();
+    //null if the chunk has no tiles or was never built
+    private final StaticBatch[] CHUNKS;
+    //false if the chunk was never built or one of its tiles changed since
+    private final boolean[] BUILT;
+    private final StaticBatch.Builder BUILDER;
+    private final PixmapRenderer.DrawCommand DRAW_COMMAND =
+            PixmapRenderer.DrawCommand.instance();
+    private int drawnChunks;
+    private boolean closed;
+
+    private TileMap(Builder<K> builder) {
+        this.ATLAS = builder.atlas;
+        this.COLUMNS = builder.columns;
+        this.ROWS = builder.rows;
+        this.TILE_WIDTH = builder.tileWidth;
+        this.TILE_HEIGHT = builder.tileHeight;
+        this.CHUNK_SIZE = builder.chunkSize;
+        this.CHUNK_COLUMNS = (this.COLUMNS + this.CHUNK_SIZE - 1) /
+                             this.CHUNK_SIZE;
+        this.CHUNK_ROWS = (this.ROWS + this.CHUNK_SIZE - 1) / this.CHUNK_SIZE;
+        this.CANVAS = builder.canvas;
+        this.SHADER = builder.shader;
+        this.TILES = new char[Math.multiplyExact(this.COLUMNS, this.ROWS)];
+        this.CHUNKS = new StaticBatch[Math.multiplyExact(this.CHUNK_COLUMNS,
+                                                         this.CHUNK_ROWS)];
+        this.BUILT = new boolean[this.CHUNKS.length];
+        this.CANVAS_FRAMEBUFFER_ID = this.CANVAS.getBackend().equals(
+                WindowRegion.WINDOW.getBackend()) ? 0 :
+                RenderState.genFramebuffer();
+        this.BUILDER = StaticBatch.builder()
+                                  .ofCanvas(this.CANVAS)
+                                  .ofShader(this.SHADER)
+                                  .ofFramebuffer(this.CANVAS_FRAMEBUFFER_ID);
+    }
+
+    //key null empties the tile
+    public void setTile(int column, int row, K key) {
+        this.ensureOpen();
+        final int INDEX = this.indexOf(column, row);
+        final int ID = null == key ? TileMap.EMPTY : this.idOf(key);
+        if (this.TILES[INDEX] == ID) {
+            return;
+        }//end if
+
+        this.TILES[INDEX] = (char) ID;
+        this.invalidate(column / this.CHUNK_SIZE, row / this.CHUNK_SIZE);
+    }
+
+    public Optional<K> getTile(int column, int row) {
+        this.ensureOpen();
+        final int ID = this.TILES[this.indexOf(column, row)];
+        return TileMap.EMPTY == ID ? Optional.empty() :
+                                     Optional.of(this.KEYS.get(ID - 1));
+    }
+
+    public void draw() {
+        this.draw(new AffineTransform());
+    }
+
+    //camera maps the coordinates of the map to the coordinates of the canvas
+    public void draw(AffineTransform camera) {
+        this.ensureOpen();
+        final Rectangle2D VIEW;
+        try {
+            VIEW = camera.createInverse()
+                         .createTransformedShape(new Rectangle2D.Double(0.0,
+                                 0.0, this.CANVAS.getWidth(),
+                                 this.CANVAS.getHeight()))
+                         .getBounds2D();
+        } catch (NoninvertibleTransformException e) {
+            throw new IllegalArgumentException("Argument camera must be " +
+                    "invertible.", e);
+        }
+
+        final double CHUNK_WIDTH = (double) this.CHUNK_SIZE * this.TILE_WIDTH;
+        final double CHUNK_HEIGHT = (double) this.CHUNK_SIZE *
+                                    this.TILE_HEIGHT;
+        final int MIN_X = Math.max((int) Math.floor(VIEW.getMinX() /
+                                   CHUNK_WIDTH), 0);
+        final int MIN_Y = Math.max((int) Math.floor(VIEW.getMinY() /
+                                   CHUNK_HEIGHT), 0);
+        final int MAX_X = Math.min((int) Math.floor(VIEW.getMaxX() /
+                                   CHUNK_WIDTH), this.CHUNK_COLUMNS - 1);
+        final int MAX_Y = Math.min((int) Math.floor(VIEW.getMaxY() /
+                                   CHUNK_HEIGHT), this.CHUNK_ROWS - 1);
+
+        this.drawnChunks = 0;
+        for (int y = MIN_Y; y <= MAX_Y; ++y) {
+            for (int x = MIN_X; x <= MAX_X; ++x) {
+                final StaticBatch CHUNK = this.chunkAt(x, y);
+                if (CHUNK != null && CHUNK.size() > 0) {
+                    CHUNK.draw(camera);
+                    ++this.drawnChunks;
+                }//end if
+            }//end for
+        }//end for
+    }
+
+    public int getColumns() {
+        this.ensureOpen();
+        return this.COLUMNS;
+    }
+
+    public int getRows() {
+        this.ensureOpen();
+        return this.ROWS;
+    }
+
+    //The number of non-empty chunks that the last draw drew
+    public int drawnChunks() {
+        this.ensureOpen();
+        return this.drawnChunks;
+    }
+
+    @Override
+    public Canvas getCanvas() {
+        this.ensureOpen();
+        return this.CANVAS;
+    }
+
+    public boolean isClosed() {
+        return this.closed;
+    }
+
+    //Doesn't close the TextureAtlas
+    @Override
+    public void close() {
+        if (this.isClosed()) {
+            return;
+        }//end if
+
+        for (int i = 0; i < this.CHUNKS.length; ++i) {
+            if (this.CHUNKS[i] != null) {
+                this.CHUNKS[i].close();
+                this.CHUNKS[i] = null;
+            }//end if
+        }//end for
+        RenderState.deleteFramebuffer(this.CANVAS_FRAMEBUFFER_ID);
+        this.closed = true;
+    }
+
+    @Override
+    void setupCanvas() {
+        this.getCanvas().setup(this.CANVAS_FRAMEBUFFER_ID);
+    }
+
+    @Override
+    void copyCanvasTo(Pixmap destination) {
+        this.getCanvas().copyTo(destination, this.CANVAS_FRAMEBUFFER_ID);
+    }
+
+    private int indexOf(int column, int row) {
+        if (column < 0 || column >= this.COLUMNS) {
+            throw new IndexOutOfBoundsException("Argument column must be in " +
+                    "[0, %d).".formatted(this.COLUMNS));
+        }//end if
+
+        if (row < 0 || row >= this.ROWS) {
+            throw new IndexOutOfBoundsException("Argument row must be in " +
+                    "[0, %d).".formatted(this.ROWS));
+        }//end if
+
+        return row * this.COLUMNS + column;
+    }
+
+    private int idOf(K key) {
+        final Integer ID = this.IDS.get(key);
+        if (ID != null) {
+            return ID;
+        }//end if
+
+        final Pixmap PIXMAP = this.ATLAS.get(key).orElseThrow(() ->
+                new IllegalArgumentException("Argument key is not in the " +
+                        "TextureAtlas of this TileMap."));
+        if (TileMap.MAX_PALETTE_SIZE == this.PALETTE.size()) {
+            throw new IllegalStateException("This TileMap can't have more " +
+                    "than %d distinct tiles.".formatted(
+                    TileMap.MAX_PALETTE_SIZE));
+        }//end if
+
+        this.KEYS.add(key);
+        this.PALETTE.add(PIXMAP);
+        final int NEW_ID = this.PALETTE.size();
+        this.IDS.put(key, NEW_ID);
+        return NEW_ID;
+    }
+
+    //The chunk is rebuilt the next time it is drawn
+    private void invalidate(int chunkX, int chunkY) {
+        this.BUILT[chunkY * this.CHUNK_COLUMNS + chunkX] = false;
+    }
+
+    //Builds the chunk if needed, null if it has no tiles
+    private StaticBatch chunkAt(int chunkX, int chunkY) {
+        final int INDEX = chunkY * this.CHUNK_COLUMNS + chunkX;
+        if (this.BUILT[INDEX]) {
+            return this.CHUNKS[INDEX];
+        }//end if
+
+        boolean empty = true;
+        final int MIN_COLUMN = chunkX * this.CHUNK_SIZE;
+        final int MIN_ROW = chunkY * this.CHUNK_SIZE;
+        final int MAX_COLUMN = Math.min(MIN_COLUMN + this.CHUNK_SIZE,
+                                        this.COLUMNS);
+        final int MAX_ROW = Math.min(MIN_ROW + this.CHUNK_SIZE, this.ROWS);
+        for (int row = MIN_ROW; row < MAX_ROW; ++row) {
+            for (int column = MIN_COLUMN; column < MAX_COLUMN; ++column) {
+                final int ID = this.TILES[row * this.COLUMNS + column];
+                if (TileMap.EMPTY == ID) {
+                    continue;
+                }//end if
+
+                empty = false;
+                this.BUILDER.add(this.DRAW_COMMAND
+                                .ofPixmap(this.PALETTE.get(ID - 1))
+                                .atPosition((double) column * this.TILE_WIDTH,
+                                            (double) row * this.TILE_HEIGHT)
+                                .ofSize(this.TILE_WIDTH, this.TILE_HEIGHT));
+            }//end for
+        }//end for
+
+        if (this.CHUNKS[INDEX] != null) {
+            //Emptied chunks keep their buffer, for when tiles are set again
+            this.CHUNKS[INDEX].rebuild(this.BUILDER);
+        } else if (!empty) {
+            this.CHUNKS[INDEX] = this.BUILDER.build();
+        }//end if
+        this.BUILT[INDEX] = true;
+        return this.CHUNKS[INDEX];
+    }
+
+    private void ensureOpen() throws IllegalStateException {
+        if (this.isClosed()) {
+            throw new IllegalStateException("This TileMap is closed.");
+        }//end if
+    }
+
+}
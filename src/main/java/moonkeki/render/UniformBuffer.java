@@ -0,0 +1,142 @@
+package moonkeki.render;
+
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL31;
+import org.lwjgl.system.MemoryUtil;
+
+import java.awt.geom.AffineTransform;
+import java.nio.ByteBuffer;
+
+/**
+ * A uniform buffer object, for data shared by several {@link ShaderProgram}s,
+ * like per-frame camera matrices. The data is staged on the CPU, and only the
+ * range written since the last bind is uploaded, on the next bind.
+ *
+ * <p>The offsets are in bytes, and must follow the std140 layout of the uniform
+ * block the UniformBuffer is read as. A ShaderProgram reads a UniformBuffer
+ * through {@link ShaderProgram#setUniformBlock(String, int)}.
+ */
+public final class UniformBuffer implements AutoCloseable {
+
+    private static final int MATRIX3_SIZE = 3 * 4 * Float.BYTES;
+
+    private final int BUFFER_OBJECT_ID;
+    private final ByteBuffer DATA;
+    private int dirtyFrom;
+    private int dirtyTo;
+    private boolean closed;
+
+    //size is in bytes
+    public UniformBuffer(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Argument size must be " +
+                    "positive.");
+        }//end if
+
+        this.DATA = MemoryUtil.memCalloc(size);
+        this.BUFFER_OBJECT_ID = GL15.glGenBuffers();
+        GL15.glBindBuffer(GL31.GL_UNIFORM_BUFFER, this.BUFFER_OBJECT_ID);
+        GL15.glBufferData(GL31.GL_UNIFORM_BUFFER, this.DATA,
+                          GL15.GL_DYNAMIC_DRAW);
+        this.dirtyFrom = size;
+        this.dirtyTo = 0;
+    }
+
+    public void setInt(int offset, int value) {
+        this.ensureWritable(offset, Integer.BYTES);
+        this.DATA.putInt(offset, value);
+    }
+
+    public void setFloat(int offset, float value) {
+        this.ensureWritable(offset, Float.BYTES);
+        this.DATA.putFloat(offset, value);
+    }
+
+    //Consecutive floats, e.g. a vec4
+    public void setFloats(int offset, float... values) {
+        this.ensureWritable(offset, values.length * Float.BYTES);
+        for (int i = 0; i < values.length; ++i) {
+            this.DATA.putFloat(offset + i * Float.BYTES, values[i]);
+        }//end for
+    }
+
+    //A mat3, which std140 lays out as 3 columns padded to vec4
+    public void setMatrix(int offset, AffineTransform value) {
+        this.ensureWritable(offset, UniformBuffer.MATRIX3_SIZE);
+        this.putColumn(offset, (float) value.getScaleX(),
+                       (float) value.getShearY(), 0.0f);
+        this.putColumn(offset + 4 * Float.BYTES, (float) value.getShearX(),
+                       (float) value.getScaleY(), 0.0f);
+        this.putColumn(offset + 8 * Float.BYTES, (float) value.getTranslateX(),
+                       (float) value.getTranslateY(), 1.0f);
+    }
+
+    //Uploads the data written since the last bind, and binds this
+    //UniformBuffer to bindingPoint
+    public void bind(int bindingPoint) {
+        this.ensureOpen();
+        if (bindingPoint < 0) {
+            throw new IllegalArgumentException("Argument bindingPoint must be " +
+                    "non-negative.");
+        }//end if
+
+        if (this.dirtyFrom < this.dirtyTo) {
+            GL15.glBindBuffer(GL31.GL_UNIFORM_BUFFER, this.BUFFER_OBJECT_ID);
+            GL15.glBufferSubData(GL31.GL_UNIFORM_BUFFER, this.dirtyFrom,
+                    this.DATA.slice(this.dirtyFrom,
+                                    this.dirtyTo - this.dirtyFrom));
+            this.dirtyFrom = this.DATA.capacity();
+            this.dirtyTo = 0;
+        }//end if
+        GL30.glBindBufferBase(GL31.GL_UNIFORM_BUFFER, bindingPoint,
+                              this.BUFFER_OBJECT_ID);
+    }
+
+    //In bytes
+    public int size() {
+        this.ensureOpen();
+        return this.DATA.capacity();
+    }
+
+    public boolean isClosed() {
+        return this.closed;
+    }
+
+    @Override
+    public void close() {
+        if (this.isClosed()) {
+            return;
+        }//end if
+
+        RenderState.deleteBuffer(this.BUFFER_OBJECT_ID);
+        MemoryUtil.memFree(this.DATA);
+        this.closed = true;
+    }
+
+    private void putColumn(int offset, float x, float y, float z) {
+        this.DATA.putFloat(offset, x)
+                 .putFloat(offset + Float.BYTES, y)
+                 .putFloat(offset + 2 * Float.BYTES, z)
+                 .putFloat(offset + 3 * Float.BYTES, 0.0f);
+    }
+
+    //Marks [offset, offset + length) as dirty
+    private void ensureWritable(int offset, int length) {
+        this.ensureOpen();
+        if (offset < 0 || offset > this.DATA.capacity() - length) {
+            throw new IndexOutOfBoundsException("Argument offset is out of " +
+                    "the bounds of this UniformBuffer.");
+        }//end if
+
+        this.dirtyFrom = Math.min(this.dirtyFrom, offset);
+        this.dirtyTo = Math.max(this.dirtyTo, offset + length);
+    }
+
+    private void ensureOpen() throws IllegalStateException {
+        if (this.isClosed()) {
+            throw new IllegalStateException("This UniformBuffer is closed.");
+        }//end if
+    }
+
+}
@@ -0,0 +1,104 @@
+package moonkeki.render;
+
+import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL33;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * The vertex array objects created so far, one per (program, vertex layout,
+ * array buffer), so that pointing the attributes of a {@link ShaderProgram}
+ * into a vertex buffer is a single bind after the first time. A vertex array
+ * object is deleted along with its program or buffer, through {@link
+ * RenderState}.
+ */
+final class VertexArrayCache {
+
+    private record Key(int programId, VertexLayout layout, int bufferId) {}
+
+    private static final Map<Key, Integer> VERTEX_ARRAYS = new HashMap<>();
+    //The last bound, so that consecutive draws of the same renderer skip the
+    //lookup. lastVertexArray is 0 if there is none.
+    private static int lastProgramId;
+    private static VertexLayout lastLayout;
+    private static int lastBufferId;
+    private static int lastVertexArray;
+
+    private VertexArrayCache() {}
+
+    //Binds the vertex array object sourcing the attributes of layout of
+    //program from bufferId, which must be the bound array buffer
+    static void bind(ShaderProgram program, VertexLayout layout,
+                     int bufferId) {
+        final int PROGRAM_ID = program.getId();
+        if (VertexArrayCache.lastVertexArray != 0 &&
+            VertexArrayCache.lastProgramId == PROGRAM_ID &&
+            VertexArrayCache.lastLayout == layout &&
+            VertexArrayCache.lastBufferId == bufferId) {
+            RenderState.bindVertexArray(VertexArrayCache.lastVertexArray);
+            return;
+        }//end if
+
+        final Key KEY = new Key(PROGRAM_ID, layout, bufferId);
+        final Integer VERTEX_ARRAY = VertexArrayCache.VERTEX_ARRAYS.get(KEY);
+        if (VERTEX_ARRAY != null) {
+            RenderState.bindVertexArray(VERTEX_ARRAY);
+            VertexArrayCache.remember(KEY, VERTEX_ARRAY);
+            return;
+        }//end if
+
+        final int ID = GL30.glGenVertexArrays();
+        RenderState.bindVertexArray(ID);
+        for (VertexLayout.Attribute a : layout.getAttributes()) {
+            final int LOCATION = program.getAttributeLocation(a.name());
+            if (-1 == LOCATION) {
+                //Not declared in, or optimized out of the ShaderProgram
+                continue;
+            }//end if
+
+            GL20.glEnableVertexAttribArray(LOCATION);
+            GL20.glVertexAttribPointer(LOCATION, a.components(), a.type(),
+                    a.normalized(), layout.getStride(), a.offset());
+            if (a.divisor() != 0) {
+                GL33.glVertexAttribDivisor(LOCATION, a.divisor());
+            }//end if
+        }//end for
+        VertexArrayCache.VERTEX_ARRAYS.put(KEY, ID);
+        VertexArrayCache.remember(KEY, ID);
+    }
+
+    static void evictProgram(int programId) {
+        VertexArrayCache.evictIf(k -> k.programId() == programId);
+    }
+
+    static void evictBuffer(int bufferId) {
+        VertexArrayCache.evictIf(k -> k.bufferId() == bufferId);
+    }
+
+    private static void remember(Key key, int vertexArray) {
+        VertexArrayCache.lastProgramId = key.programId();
+        VertexArrayCache.lastLayout = key.layout();
+        VertexArrayCache.lastBufferId = key.bufferId();
+        VertexArrayCache.lastVertexArray = vertexArray;
+    }
+
+    private static void evictIf(Predicate<Key> predicate) {
+        final Iterator<Map.Entry<Key, Integer>> ITERATOR =
+                VertexArrayCache.VERTEX_ARRAYS.entrySet().iterator();
+        while (ITERATOR.hasNext()) {
+            final Map.Entry<Key, Integer> ENTRY = ITERATOR.next();
+            if (predicate.test(ENTRY.getKey())) {
+                if (ENTRY.getValue() == VertexArrayCache.lastVertexArray) {
+                    VertexArrayCache.lastVertexArray = 0;
+                }//end if
+                RenderState.deleteVertexArray(ENTRY.getValue());
+                ITERATOR.remove();
+            }//end if
+        }//end while
+    }
+
+}
@@ -0,0 +1,166 @@
+package moonkeki.render;
+
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL30;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Describes how the vertices of a vertex buffer are laid out, i.e. which
+ * attributes every vertex has, in what order and of which type. A {@link
+ * ShaderProgram} uses it to point its attributes into the vertex buffer.
+ */
+final class VertexLayout {
+
+    //divisor is 0 for per-vertex attributes and 1 for per-instance ones
+    record Attribute(String name, int components, int type, boolean normalized,
+                     int offset, int divisor) {
+        Attribute {
+            if (components < 1 || components > 4) {
+                throw new IllegalArgumentException("Argument components " +
+                        "must be in [1, 4].");
+            }//end if
+
+            if (divisor < 0) {
+                throw new IllegalArgumentException("Argument divisor can't " +
+                        "be negative.");
+            }//end if
+        }
+    }
+
+    static final class Builder {
+        private final List<Attribute> ATTRIBUTES = new ArrayList<>();
+        private int stride;
+        private int divisor;
+
+        private Builder() {}
+
+        //The attributes added after this call advance once per instance,
+        //instead of once per vertex
+        Builder perInstance() {
+            this.divisor = 1;
+            return this;
+        }
+
+        Builder ofFloats(String name, int components) {
+            return this.of(name, components, GL11.GL_FLOAT, false);
+        }
+
+        Builder of(String name, int components, int type, boolean normalized) {
+            this.ATTRIBUTES.add(new Attribute(name, components, type,
+                    normalized, this.stride, this.divisor));
+            this.stride += components * VertexLayout.sizeOf(type);
+            return this;
+        }
+
+        VertexLayout build() {
+            return new VertexLayout(this);
+        }
+    }
+
+    static final VertexLayout DEFAULT = VertexLayout.builder()
+            .ofFloats("position", 2)
+            .ofFloats("v_texCoord", 2)
+            .build();
+    static final VertexLayout MULTI_TEXTURE = VertexLayout.builder()
+            .ofFloats("position", 2)
+            .ofFloats("v_texCoord", 2)
+            .ofFloats("v_texIndex", 1)
+            .build();
+    //The corners of the quad are expanded from gl_VertexID in the shader
+    static final VertexLayout INSTANCED = VertexLayout.builder()
+            .perInstance()
+            .ofFloats("i_rect", 4)
+            .ofFloats("i_texRect", 4)
+            .ofFloats("i_row0", 3)
+            .ofFloats("i_row1", 3)
+            .build();
+
+    private final List<Attribute> ATTRIBUTES;
+    private final int STRIDE;
+
+    static Builder builder() {
+        return new Builder();
+    }
+
+    //in bytes
+    private static int sizeOf(int type) {
+        return switch (type) {
+            case GL11.GL_FLOAT -> Float.BYTES;
+            case GL30.GL_HALF_FLOAT, GL11.GL_SHORT, GL11.GL_UNSIGNED_SHORT ->
+                    Short.BYTES;
+            case GL11.GL_BYTE, GL11.GL_UNSIGNED_BYTE -> Byte.BYTES;
+            default -> throw new IllegalArgumentException("Argument type " +
+                    "is not a supported vertex attribute type.");
+        };
+    }
+
+    //The IEEE 754 binary16 bits of value, rounded to the nearest even
+    static short toHalfFloat(float value) {
+        final int BITS = Float.floatToRawIntBits(value);
+        final int SIGN = BITS >>> 16 & 0x8000;
+        final int FLOAT_EXPONENT = BITS >>> 23 & 0xFF;
+        final int EXPONENT = FLOAT_EXPONENT - 127 + 15;
+        int mantissa = BITS & 0x7FFFFF;
+
+        //Infinity or NaN
+        if (0xFF == FLOAT_EXPONENT) {
+            return (short) (SIGN | 0x7C00 | (mantissa != 0 ? 0x200 : 0));
+        }//end if
+
+        //Too large, becomes infinity
+        if (EXPONENT >= 0x1F) {
+            return (short) (SIGN | 0x7C00);
+        }//end if
+
+        final int SHIFT;
+        int half;
+        if (EXPONENT <= 0) {
+            //Too small, becomes zero
+            if (EXPONENT < -10) {
+                return (short) SIGN;
+            }//end if
+
+            //Subnormal
+            mantissa |= 0x800000;
+            SHIFT = 14 - EXPONENT;
+            half = mantissa >> SHIFT;
+        } else {
+            SHIFT = 13;
+            half = EXPONENT << 10 | mantissa >> SHIFT;
+        }//end if
+
+        //A carry may overflow into the exponent, which is still correct
+        final int REMAINDER = mantissa & (1 << SHIFT) - 1;
+        final int HALFWAY = 1 << SHIFT - 1;
+        if (REMAINDER > HALFWAY || (REMAINDER == HALFWAY && (half & 1) != 0)) {
+            ++half;
+        }//end if
+
+        return (short) (SIGN | half);
+    }
+
+    private VertexLayout(Builder builder) {
+        this.ATTRIBUTES = Collections.unmodifiableList(new ArrayList<>(
+                builder.ATTRIBUTES));
+        this.STRIDE = builder.stride;
+    }
+
+    List<Attribute> getAttributes() {
+        return this.ATTRIBUTES;
+    }
+
+    //in bytes
+    int getStride() {
+        return this.STRIDE;
+    }
+
+    @Override
+    public String toString() {
+        return "VertexLayout[stride=%d, attributes=%s]".formatted(this.STRIDE,
+                this.ATTRIBUTES);
+    }
+
+}
@@ -3,7 +3,6 @@ package moonkeki.render;
 import org.lwjgl.glfw.GLFW;
 import org.lwjgl.opengl.GL11;
 import org.lwjgl.opengl.GL20;
-import org.lwjgl.opengl.GL30;
 
 import java.awt.*;
 import java.util.Objects;
@@ -135,6 +134,9 @@ public abstract class WindowRegion extends Canvas {
         @Override
         void clear(Color color, int framebufferId) {}
 
+        @Override
+        void clearDepth(int framebufferId) {}
+
         @Override
         void copyTo(Pixmap destination, int sourceFramebufferId) {
             if (destination.getWidth() != 0 || destination.getHeight() != 0) {
@@ -161,9 +163,20 @@ public abstract class WindowRegion extends Canvas {
 
     @Override
     public void clear(Color color) {
+        if (FrameCapture.isRecording()) {
+            FrameCapture.recordClear(this, color);
+        }//end if
         this.clear(color, 0);
     }
 
+    @Override
+    public void clearDepth() {
+        if (FrameCapture.isRecording()) {
+            FrameCapture.recordClearDepth(this);
+        }//end if
+        this.clearDepth(0);
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (this == obj) {
@@ -207,6 +220,11 @@ public abstract class WindowRegion extends Canvas {
         super.clear(color, 0);
     }
 
+    @Override
+    void clearDepth(int framebufferId) {
+        super.clearDepth(0);
+    }
+
     @Override
     void copyTo(Pixmap destination, int sourceFramebufferId) {
         final Size SIZE = this.getSize();
@@ -215,7 +233,7 @@ public abstract class WindowRegion extends Canvas {
                     "must have the same size as this WindowRegion.");
         }
 
-        GL30.glBindFramebuffer(GL30.GL_READ_FRAMEBUFFER, 0);
+        RenderState.bindReadFramebuffer(0);
         destination.getTexture().bind();
         GL20.glCopyTexSubImage2D(GL11.GL_TEXTURE_2D, 0,
                                  destination.getXOffset(),
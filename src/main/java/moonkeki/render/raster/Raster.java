@@ -0,0 +1,158 @@
+package moonkeki.render.raster;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * An image in main memory, the software counterpart of a {@link
+ * moonkeki.render.Texture}, that a {@link RasterRenderer} draws onto and from
+ * without a GPU. Its pixels are packed as returned by {@link Color#getRGB()},
+ * and its origin (0, 0) is in the bottom left corner with the y-axis pointing
+ * upwards, like that of a {@link moonkeki.render.Canvas}.
+ */
+public final class Raster {
+
+    /**
+     * A rectangular region of a {@link Raster}, to be drawn by a {@link
+     * RasterRenderer}. The software counterpart of a {@link
+     * moonkeki.render.Pixmap}.
+     */
+    public record Region(Raster raster, int x, int y, int width, int height) {
+        public Region {
+            Objects.requireNonNull(raster);
+            if (x < 0 || y < 0) {
+                throw new IllegalArgumentException("Arguments x and y can't " +
+                        "be negative.");
+            }//end if
+
+            if (width < 0 || height < 0) {
+                throw new IllegalArgumentException("Arguments width and " +
+                        "height can't be negative.");
+            }//end if
+
+            if (Math.addExact(x, width) > raster.getWidth() ||
+                Math.addExact(y, height) > raster.getHeight()) {
+                throw new IllegalArgumentException("The region must lie " +
+                        "within argument raster.");
+            }//end if
+        }
+
+        //x and y are relative to this Region
+        public Region subRegion(int x, int y, int width, int height) {
+            if (x < 0 || y < 0) {
+                throw new IllegalArgumentException("Arguments x and y can't " +
+                        "be negative.");
+            }//end if
+
+            if (Math.addExact(x, width) > this.width ||
+                Math.addExact(y, height) > this.height) {
+                throw new IllegalArgumentException("The sub-region must lie " +
+                        "within this Region.");
+            }//end if
+
+            return new Region(this.raster, this.x + x, this.y + y, width,
+                              height);
+        }
+
+        public boolean isEmpty() {
+            return 0 == this.width || 0 == this.height;
+        }
+    }
+
+    private final int WIDTH;
+    private final int HEIGHT;
+    //Row-major, from the bottom row up
+    private final int[] PIXELS;
+
+    //Transparent black
+    public Raster(int width, int height) {
+        if (width <= 0) {
+            throw new IllegalArgumentException("Argument width must be " +
+                    "positive.");
+        }//end if
+
+        if (height <= 0) {
+            throw new IllegalArgumentException("Argument height must be " +
+                    "positive.");
+        }//end if
+
+        this.WIDTH = width;
+        this.HEIGHT = height;
+        this.PIXELS = new int[Math.multiplyExact(width, height)];
+    }
+
+    //pixels as in the Texture constructor: (row, column) -> Color.getRGB(),
+    //with the origin in the bottom left corner
+    public Raster(int width, int height, IntBinaryOperator pixels) {
+        this(width, height);
+        for (int i = 0; i < height; ++i) {
+            for (int j = 0; j < width; ++j) {
+                this.PIXELS[i * width + j] = pixels.applyAsInt(i, j);
+            }//end for
+        }//end for
+    }
+
+    //image has its origin in the top left corner, as a BufferedImage does
+    public Raster(BufferedImage image) {
+        this(image.getWidth(), image.getHeight());
+        for (int i = 0; i < this.HEIGHT; ++i) {
+            image.getRGB(0, this.HEIGHT - i - 1, this.WIDTH, 1, this.PIXELS,
+                         i * this.WIDTH, this.WIDTH);
+        }//end for
+    }
+
+    public int getWidth() {
+        return this.WIDTH;
+    }
+
+    public int getHeight() {
+        return this.HEIGHT;
+    }
+
+    //As returned by Color.getRGB()
+    public int getPixel(int x, int y) {
+        return this.PIXELS[this.indexOf(x, y)];
+    }
+
+    public void setPixel(int x, int y, int argb) {
+        this.PIXELS[this.indexOf(x, y)] = argb;
+    }
+
+    public void clear(Color color) {
+        Arrays.fill(this.PIXELS, color.getRGB());
+    }
+
+    public Region region() {
+        return new Region(this, 0, 0, this.WIDTH, this.HEIGHT);
+    }
+
+    public Region subRegion(int x, int y, int width, int height) {
+        return new Region(this, x, y, width, height);
+    }
+
+    public BufferedImage toBufferedImage() {
+        final BufferedImage IMAGE = new BufferedImage(this.WIDTH, this.HEIGHT,
+                BufferedImage.TYPE_INT_ARGB);
+        for (int i = 0; i < this.HEIGHT; ++i) {
+            IMAGE.setRGB(0, this.HEIGHT - i - 1, this.WIDTH, 1, this.PIXELS,
+                         i * this.WIDTH, this.WIDTH);
+        }//end for
+
+        return IMAGE;
+    }
+
+    //Row-major, from the bottom row up. Not a copy.
+    int[] pixels() {
+        return this.PIXELS;
+    }
+
+    private int indexOf(int x, int y) {
+        Objects.checkIndex(x, this.WIDTH);
+        Objects.checkIndex(y, this.HEIGHT);
+        return y * this.WIDTH + x;
+    }
+
+}
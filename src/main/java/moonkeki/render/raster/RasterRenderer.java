@@ -0,0 +1,342 @@
+package moonkeki.render.raster;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Draws {@link Raster.Region}s onto a {@link Raster} on the CPU, without an
+ * OpenGL context, e.g. for thumbnails and replays on machines without a GPU.
+ * The software counterpart of a {@link moonkeki.render.BatchRenderer}: a quad
+ * is queued with the same arguments as {@link
+ * moonkeki.render.BatchRenderer#queue(moonkeki.render.Pixmap, double, double,
+ * double, double, double, double, double, double, double, double, int)}, and
+ * is blended over the canvas as the default alpha blending does, sampling the
+ * nearest pixel.
+ *
+ * <p>On {@link #flush()}, the queued quads are rasterized in row bands of the
+ * canvas. Every band draws the quads in the order they were queued, and bands
+ * don't overlap, so a parallel RasterRenderer rasterizes the bands on the
+ * common ForkJoinPool, with the same result as a sequential one.
+ */
+public final class RasterRenderer {
+
+    public static final class Builder {
+        private Raster canvas;
+        private AffineTransform transform = new AffineTransform();
+        private boolean parallel;
+        private int bandHeight = RasterRenderer.DEFAULT_BAND_HEIGHT;
+
+        private Builder() {}
+
+        public Builder ofCanvas(Raster canvas) {
+            this.canvas = canvas;
+            return this;
+        }
+
+        //Maps the coordinates of the quads to those of the canvas
+        public Builder ofTransform(AffineTransform transform) {
+            this.transform = transform;
+            return this;
+        }
+
+        public Builder parallel() {
+            this.parallel = true;
+            return this;
+        }
+
+        public Builder sequential() {
+            this.parallel = false;
+            return this;
+        }
+
+        //In pixels, the rows of the canvas a task rasterizes
+        public Builder ofBandHeight(int bandHeight) {
+            if (bandHeight < 1) {
+                throw new IllegalArgumentException("Argument bandHeight must " +
+                        "be positive.");
+            }//end if
+
+            this.bandHeight = bandHeight;
+            return this;
+        }
+
+        public RasterRenderer build() {
+            if (null == this.canvas) {
+                throw new IllegalStateException("A canvas must be given.");
+            }//end if
+
+            return new RasterRenderer(this);
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    //The flags of queue()
+    public static final int MIRRORED_X = 1;
+    public static final int MIRRORED_Y = 1 << 1;
+
+    private static final int DEFAULT_BAND_HEIGHT = 32;
+    private static final int INITIAL_CAPACITY = 64;
+    //Per quad: the inverse transform, from the canvas to the unit square of
+    //the quad, as m00, m01, m02, m10, m11, m12
+    private static final int INVERSE_DOUBLES = 6;
+    //Per quad: the bounds on the canvas, as minX, minY, maxX, maxY, inclusive
+    private static final int BOUNDS_INTS = 4;
+
+    private final Raster CANVAS;
+    private final AffineTransform TRANSFORM;
+    private final boolean PARALLEL;
+    private final int BAND_HEIGHT;
+    private Raster.Region[] regions = new Raster.Region[
+            RasterRenderer.INITIAL_CAPACITY];
+    private int[] flags = new int[RasterRenderer.INITIAL_CAPACITY];
+    private double[] inverses = new double[RasterRenderer.INITIAL_CAPACITY *
+                                           RasterRenderer.INVERSE_DOUBLES];
+    private int[] bounds = new int[RasterRenderer.INITIAL_CAPACITY *
+                                   RasterRenderer.BOUNDS_INTS];
+    private int size;
+
+    private RasterRenderer(Builder builder) {
+        this.CANVAS = builder.canvas;
+        this.TRANSFORM = new AffineTransform(builder.transform);
+        this.PARALLEL = builder.parallel;
+        this.BAND_HEIGHT = builder.bandHeight;
+    }
+
+    //Same as queue(region, x, y, region.width(), region.height(), 1, 0, 0, 1,
+    //0, 0, 0)
+    public void queue(Raster.Region region, double x, double y) {
+        this.queue(region, x, y, region.width(), region.height(),
+                   1.0, 0.0, 0.0, 1.0, 0.0, 0.0, 0);
+    }
+
+    //The quad (x, y, width, height) is transformed by the coefficients, in the
+    //order of the AffineTransform constructor, and then by the transform of
+    //this RasterRenderer. flags is a combination of MIRRORED_X and MIRRORED_Y.
+    public void queue(Raster.Region region, double x, double y,
+                      double width, double height,
+                      double m00, double m10, double m01, double m11,
+                      double m02, double m12, int flags) {
+        if (width < 0.0) {
+            throw new IllegalArgumentException("Argument width can't be " +
+                    "negative.");
+        }//end if
+
+        if (height < 0.0) {
+            throw new IllegalArgumentException("Argument height can't be " +
+                    "negative.");
+        }//end if
+
+        if (region.raster() == this.CANVAS) {
+            throw new IllegalArgumentException("Argument region is of the " +
+                    "canvas of this RasterRenderer.");
+        }//end if
+
+        if (region.isEmpty() || 0.0 == width || 0.0 == height) {
+            return;
+        }//end if
+
+        //The unit square of the quad to the canvas
+        final AffineTransform T = new AffineTransform(this.TRANSFORM);
+        T.concatenate(new AffineTransform(m00, m10, m01, m11, m02, m12));
+        T.translate(x, y);
+        T.scale(width, height);
+        final AffineTransform INVERSE;
+        try {
+            INVERSE = T.createInverse();
+        } catch (NoninvertibleTransformException e) {
+            //The quad collapses to a line or a point, it covers no pixel
+            return;
+        }
+
+        final double[] CORNERS = {0.0, 0.0, 0.0, 1.0, 1.0, 1.0, 1.0, 0.0};
+        T.transform(CORNERS, 0, CORNERS, 0, 4);
+        double minX = CORNERS[0];
+        double minY = CORNERS[1];
+        double maxX = minX;
+        double maxY = minY;
+        for (int i = 2; i < CORNERS.length; i += 2) {
+            minX = Math.min(minX, CORNERS[i]);
+            maxX = Math.max(maxX, CORNERS[i]);
+            minY = Math.min(minY, CORNERS[i + 1]);
+            maxY = Math.max(maxY, CORNERS[i + 1]);
+        }//end for
+
+        //The pixels whose centers may be covered, within the canvas
+        final int MIN_X = (int) Math.max(Math.floor(minX), 0.0);
+        final int MIN_Y = (int) Math.max(Math.floor(minY), 0.0);
+        final int MAX_X = (int) Math.min(Math.ceil(maxX),
+                                         this.CANVAS.getWidth() - 1);
+        final int MAX_Y = (int) Math.min(Math.ceil(maxY),
+                                         this.CANVAS.getHeight() - 1);
+        if (MIN_X > MAX_X || MIN_Y > MAX_Y) {
+            return;
+        }//end if
+
+        this.ensureCapacity(this.size + 1);
+        final int INDEX = this.size++;
+        this.regions[INDEX] = region;
+        this.flags[INDEX] = flags;
+        final int I = INDEX * RasterRenderer.INVERSE_DOUBLES;
+        this.inverses[I] = INVERSE.getScaleX();
+        this.inverses[I + 1] = INVERSE.getShearX();
+        this.inverses[I + 2] = INVERSE.getTranslateX();
+        this.inverses[I + 3] = INVERSE.getShearY();
+        this.inverses[I + 4] = INVERSE.getScaleY();
+        this.inverses[I + 5] = INVERSE.getTranslateY();
+        final int B = INDEX * RasterRenderer.BOUNDS_INTS;
+        this.bounds[B] = MIN_X;
+        this.bounds[B + 1] = MIN_Y;
+        this.bounds[B + 2] = MAX_X;
+        this.bounds[B + 3] = MAX_Y;
+    }
+
+    //Rasterizes the queued quads onto the canvas, in the order they were
+    //queued
+    public void flush() {
+        if (0 == this.size) {
+            return;
+        }//end if
+
+        final int BANDS = (this.CANVAS.getHeight() + this.BAND_HEIGHT - 1) /
+                          this.BAND_HEIGHT;
+        if (this.PARALLEL && BANDS > 1) {
+            IntStream.range(0, BANDS).parallel().forEach(this::rasterizeBand);
+        } else {
+            for (int b = 0; b < BANDS; ++b) {
+                this.rasterizeBand(b);
+            }//end for
+        }//end if
+
+        this.clear();
+    }
+
+    public Raster getCanvas() {
+        return this.CANVAS;
+    }
+
+    //The number of queued quads that cover a pixel of the canvas
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return 0 == this.size;
+    }
+
+    public boolean isParallel() {
+        return this.PARALLEL;
+    }
+
+    //Drops the queued quads
+    public void clear() {
+        Arrays.fill(this.regions, 0, this.size, null);
+        this.size = 0;
+    }
+
+    private void rasterizeBand(int band) {
+        final int FROM_Y = band * this.BAND_HEIGHT;
+        final int TO_Y = Math.min(FROM_Y + this.BAND_HEIGHT,
+                                  this.CANVAS.getHeight());
+        for (int q = 0; q < this.size; ++q) {
+            final int B = q * RasterRenderer.BOUNDS_INTS;
+            final int MIN_Y = Math.max(this.bounds[B + 1], FROM_Y);
+            final int MAX_Y = Math.min(this.bounds[B + 3], TO_Y - 1);
+            if (MIN_Y > MAX_Y) {
+                continue;
+            }//end if
+
+            this.rasterize(q, this.bounds[B], this.bounds[B + 2], MIN_Y,
+                           MAX_Y);
+        }//end for
+    }
+
+    //The rows [minY, maxY] of the columns [minX, maxX] of quad q
+    private void rasterize(int q, int minX, int maxX, int minY, int maxY) {
+        final Raster.Region REGION = this.regions[q];
+        final int[] SOURCE = REGION.raster().pixels();
+        final int SOURCE_WIDTH = REGION.raster().getWidth();
+        final int[] TARGET = this.CANVAS.pixels();
+        final int TARGET_WIDTH = this.CANVAS.getWidth();
+        final boolean MIRRORED_X = (this.flags[q] &
+                                    RasterRenderer.MIRRORED_X) != 0;
+        final boolean MIRRORED_Y = (this.flags[q] &
+                                    RasterRenderer.MIRRORED_Y) != 0;
+        final int I = q * RasterRenderer.INVERSE_DOUBLES;
+        final double M00 = this.inverses[I];
+        final double M01 = this.inverses[I + 1];
+        final double M02 = this.inverses[I + 2];
+        final double M10 = this.inverses[I + 3];
+        final double M11 = this.inverses[I + 4];
+        final double M12 = this.inverses[I + 5];
+
+        for (int y = minY; y <= maxY; ++y) {
+            //The unit square coordinates of the center of the pixel (minX, y),
+            //stepping by (M00, M10) per pixel
+            final double CENTER_Y = y + 0.5;
+            double s = M00 * (minX + 0.5) + M01 * CENTER_Y + M02;
+            double t = M10 * (minX + 0.5) + M11 * CENTER_Y + M12;
+            for (int x = minX; x <= maxX; ++x, s += M00, t += M10) {
+                if (s < 0.0 || s >= 1.0 || t < 0.0 || t >= 1.0) {
+                    continue;
+                }//end if
+
+                final double U = MIRRORED_X ? 1.0 - s : s;
+                final double V = MIRRORED_Y ? 1.0 - t : t;
+                final int SOURCE_X = REGION.x() + Math.min(
+                        (int) (U * REGION.width()), REGION.width() - 1);
+                final int SOURCE_Y = REGION.y() + Math.min(
+                        (int) (V * REGION.height()), REGION.height() - 1);
+                final int INDEX = y * TARGET_WIDTH + x;
+                TARGET[INDEX] = RasterRenderer.blend(
+                        SOURCE[SOURCE_Y * SOURCE_WIDTH + SOURCE_X],
+                        TARGET[INDEX]);
+            }//end for
+        }//end for
+    }
+
+    //source over destination by the source alpha, on every channel including
+    //the alpha, as glBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA) does
+    private static int blend(int source, int destination) {
+        final int ALPHA = source >>> 24;
+        if (0xFF == ALPHA) {
+            return source;
+        }//end if
+
+        if (0 == ALPHA) {
+            return destination;
+        }//end if
+
+        final int INVERSE = 0xFF - ALPHA;
+        int result = 0;
+        for (int shift = 0; shift < Integer.SIZE; shift += Byte.SIZE) {
+            final int SOURCE = shift == 24 ? ALPHA : source >>> shift & 0xFF;
+            final int DESTINATION = destination >>> shift & 0xFF;
+            final int CHANNEL = (SOURCE * ALPHA + DESTINATION * INVERSE +
+                                 0x7F) / 0xFF;
+            result |= CHANNEL << shift;
+        }//end for
+
+        return result;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= this.regions.length) {
+            return;
+        }//end if
+
+        final int NEW_CAPACITY = Math.max(capacity,
+                                          2 * this.regions.length);
+        this.regions = Arrays.copyOf(this.regions, NEW_CAPACITY);
+        this.flags = Arrays.copyOf(this.flags, NEW_CAPACITY);
+        this.inverses = Arrays.copyOf(this.inverses, Math.multiplyExact(
+                NEW_CAPACITY, RasterRenderer.INVERSE_DOUBLES));
+        this.bounds = Arrays.copyOf(this.bounds, Math.multiplyExact(
+                NEW_CAPACITY, RasterRenderer.BOUNDS_INTS));
+    }
+
+}
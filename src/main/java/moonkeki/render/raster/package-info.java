@@ -0,0 +1 @@
+package moonkeki.render.raster;